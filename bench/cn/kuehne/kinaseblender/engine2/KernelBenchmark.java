@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2015 Thomas Kuehne <thomas@kuehne.cn>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package cn.kuehne.kinaseblender.engine2;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * checks that all kernels give identical results and times them on random
+ * rows of several sizes and densities, stored in arrays and in direct
+ * buffers; not part of the application
+ */
+public final class KernelBenchmark {
+	private static final double[] DENSITIES = { 0.01, 0.05, 0.2, 0.5 };
+
+	private static final Kernel[] KERNELS = { new Kernel.Scalar(),
+			new Kernel.Unrolled() };
+
+	/**
+	 * number of rows per measurement
+	 */
+	private static final int ROWS = 64;
+
+	private static final int[] SIZES = { 256, 4096, 65536 };
+
+	/**
+	 * evaluated rows per size and kernel
+	 */
+	private static final long WORK = 1L << 24;
+
+	/**
+	 * compare the results of all kernels on patterns of all lengths up to a
+	 * few words and on the benchmark sizes
+	 * @return false on any difference
+	 */
+	static boolean check(final Random random) {
+		for (int words = 0; words < 11; words++) {
+			if (!check(random, words, 0.5)) {
+				return false;
+			}
+		}
+		for (final int bits : SIZES) {
+			for (final double density : DENSITIES) {
+				if (!check(random, Bits.words(bits), density)) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	private static boolean check(final Random random, final int words,
+			final double density) {
+		final long[] row = row(random, words, density);
+		final long[] covered = row(random, words, density);
+		final LongBuffer direct = direct(new long[][] { covered, row });
+		final int[] weights = new int[words << 6];
+		for (int bit = 0; bit < weights.length; bit++) {
+			weights[bit] = random.nextInt(100);
+		}
+		final Kernel reference = KERNELS[0];
+		for (final Kernel kernel : KERNELS) {
+			if (kernel.count(row) != reference.count(row)
+					|| kernel.count(direct, words, words) != reference
+							.count(row)) {
+				return false;
+			}
+			for (final int[] weight : new int[][] { null, weights }) {
+				final int expected = reference.gain(covered, row, weight);
+				if (kernel.gain(covered, row, weight) != expected
+						|| kernel.gain(covered, direct, words,
+								weight) != expected) {
+					return false;
+				}
+				final long[] theirs = covered.clone();
+				reference.orGain(theirs, row, weight);
+				final long[] mine = covered.clone();
+				final long[] mineDirect = covered.clone();
+				if (kernel.orGain(mine, row, weight) != expected
+						|| kernel.orGain(mineDirect, direct, words,
+								weight) != expected
+						|| !Arrays.equals(mine, theirs)
+						|| !Arrays.equals(mineDirect, theirs)) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * the given rows one after another in a direct buffer
+	 */
+	private static LongBuffer direct(final long[][] rows) {
+		final LongBuffer back = ByteBuffer
+				.allocateDirect(8 * rows.length * rows[0].length)
+				.order(ByteOrder.nativeOrder()).asLongBuffer();
+		for (final long[] row : rows) {
+			back.put(row);
+		}
+		back.clear();
+		return back;
+	}
+
+	public static void main(final String[] args) {
+		final Random random = new Random(0x6b65726eL);
+		if (!check(random)) {
+			System.out.println("kernels differ");
+			System.exit(1);
+		}
+		System.out.println("kernels agree");
+		System.out.println("bits\tdensity\tkernel\tarray\tdirect"
+				+ " (ns per gain and orGain)");
+		for (final int bits : SIZES) {
+			for (final double density : DENSITIES) {
+				final int words = Bits.words(bits);
+				final long[][] rows = new long[ROWS][];
+				for (int index = 0; index < ROWS; index++) {
+					rows[index] = row(random, words, density);
+				}
+				final LongBuffer direct = direct(rows);
+				for (final Kernel kernel : KERNELS) {
+					System.out.println(bits + "\t" + density + "\t" + kernel
+							+ "\t" + time(kernel, rows, null) + "\t"
+							+ time(kernel, rows, direct));
+				}
+			}
+		}
+	}
+
+	private static long[] row(final Random random, final int words,
+			final double density) {
+		final long[] back = new long[words];
+		for (int bit = 0; bit < words << 6; bit++) {
+			if (random.nextDouble() < density) {
+				Bits.set(back, bit);
+			}
+		}
+		return back;
+	}
+
+	/**
+	 * nanoseconds per gain and orGain of a row, the best of a few runs
+	 * @param direct the rows in a direct buffer, null to use the arrays
+	 */
+	private static long time(final Kernel kernel, final long[][] rows,
+			final LongBuffer direct) {
+		final int words = rows[0].length;
+		final long repeats = Math.max(1, WORK / ROWS / words);
+		long best = Long.MAX_VALUE;
+		int sink = 0;
+		for (int run = 0; run < 5; run++) {
+			final long start = System.nanoTime();
+			for (long repeat = 0; repeat < repeats; repeat++) {
+				final long[] covered = new long[words];
+				for (int index = 0; index < rows.length; index++) {
+					if (direct == null) {
+						sink += kernel.gain(covered, rows[index], null);
+						sink += kernel.orGain(covered, rows[index], null);
+					} else {
+						sink += kernel.gain(covered, direct, index * words,
+								null);
+						sink += kernel.orGain(covered, direct, index * words,
+								null);
+					}
+				}
+			}
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		if (sink == 42) {
+			System.out.print("");
+		}
+		return best / (repeats * rows.length);
+	}
+
+	private KernelBenchmark() {
+	}
+}
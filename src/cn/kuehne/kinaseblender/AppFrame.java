@@ -207,7 +207,7 @@ public class AppFrame extends JFrame implements AppInterface {
 		}
 
 		void importClipboard() {
-			new Thread(this).start();
+			startJob(this);
 		}
 
 		public void run() {
@@ -352,8 +352,33 @@ public class AppFrame extends JFrame implements AppInterface {
 			final AppFrame appFrame = new AppFrame();
 			
 			if(args != null && 0 < args.length){
-				new Thread(appFrame.new FileImporter(args)).start();
+				appFrame.startJob(appFrame.new FileImporter(args));
+			}
+		}
+	}
+
+	/**
+	 * Helper: run an import after the previous one finished
+	 */
+	static class Job implements Runnable {
+		private final Thread previous;
+		private final Runnable task;
+
+		Job(final Thread previous, final Runnable task) {
+			this.previous = previous;
+			this.task = task;
+		}
+
+		public void run() {
+			if (previous != null) {
+				try {
+					previous.join();
+				} catch (InterruptedException e) {
+					// cancelled by an even newer job
+					return;
+				}
 			}
+			task.run();
 		}
 	}
 
@@ -396,6 +421,12 @@ public class AppFrame extends JFrame implements AppInterface {
 
 	private final static long serialVersionUID = 1L;
 
+	/**
+	 * system property with the number of search threads, defaults to the
+	 * number of processors
+	 */
+	private final static String THREADS_PROPERTY = "kinaseblender.threads";
+
 	/**
 	 * get window icon, load it if necessary
 	 */
@@ -427,6 +458,11 @@ public class AppFrame extends JFrame implements AppInterface {
 
 	private final GuiCloud guiCloud;
 
+	/**
+	 * current import, null if none was started
+	 */
+	private Thread job;
+
 	private final JProgressBar progressBar;
 
 	private final Stack<String> progressMessages;
@@ -471,6 +507,10 @@ public class AppFrame extends JFrame implements AppInterface {
 		top.add(combo, BorderLayout.CENTER);
 
 		guiCloud = new GuiCloud(this);
+		final Integer threads = Integer.getInteger(THREADS_PROPERTY);
+		if (threads != null) {
+			guiCloud.setSearchThreads(threads.intValue());
+		}
 		content.add(new JScrollPane(guiCloud.getCloudComponent()),
 				BorderLayout.CENTER);
 
@@ -581,6 +621,18 @@ public class AppFrame extends JFrame implements AppInterface {
 		invokeInEventDispatchThread(new SetSelectedItem(item));
 	}
 
+	/**
+	 * cancel the current import and start a new one
+	 */
+	synchronized void startJob(final Runnable task) {
+		final Thread previous = job;
+		if (previous != null) {
+			previous.interrupt();
+		}
+		job = new Thread(new Job(previous, task));
+		job.start();
+	}
+
 	/**
 	 * store window preferences, so that the window can be opened at it's last position
 	 */
@@ -0,0 +1,464 @@
+/*
+ * Copyright (c) 2015 Thomas Kuehne <thomas@kuehne.cn>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package cn.kuehne.kinaseblender.engine2;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * coordinator of a distributed beam search: BeamWorker processes on this
+ * machine connect to it, identify themselves by its random token and
+ * receive its cloud; each depth of a SearchState using this coordinator is
+ * split into one slice of templates per worker. The slice of a failing
+ * worker is passed on to the remaining ones.
+ */
+public class BeamCoordinator implements Closeable {
+	/**
+	 * discard everything a worker process prints
+	 */
+	private static final class Drain implements Runnable {
+		private final InputStream stream;
+
+		Drain(final InputStream stream) {
+			this.stream = stream;
+		}
+
+		public void run() {
+			final byte[] buffer = new byte[4096];
+			try {
+				while (-1 < stream.read(buffer)) {
+					// noop
+				}
+			} catch (final IOException e) {
+				// the process is gone
+			}
+		}
+	}
+
+	/**
+	 * connection to a single worker
+	 */
+	private static final class Link {
+		private final DataInputStream in;
+		private final DataOutputStream out;
+
+		/**
+		 * the depth the worker knows, null before the first one
+		 */
+		private BeamProtocol.Request sent;
+
+		private final Socket socket;
+
+		Link(final Socket socket) throws IOException {
+			this.socket = socket;
+			socket.setTcpNoDelay(true);
+			in = new DataInputStream(new BufferedInputStream(socket
+					.getInputStream()));
+			out = new DataOutputStream(new BufferedOutputStream(socket
+					.getOutputStream()));
+		}
+
+		void close() {
+			try {
+				socket.close();
+			} catch (final IOException e) {
+				// already broken
+			}
+		}
+
+		BeamProtocol.Slice expand(final BeamProtocol.Request request,
+				final int from, final int to) throws IOException {
+			if (sent != request) {
+				out.writeByte(BeamProtocol.DEPTH);
+				BeamProtocol.writeRequest(out, request);
+				sent = request;
+			}
+			out.writeByte(BeamProtocol.TASK);
+			out.writeInt(from);
+			out.writeInt(to);
+			out.flush();
+			final BeamProtocol.Slice slice = BeamProtocol.readSlice(in);
+			if (slice.from != from || slice.to != to) {
+				throw new IOException("bad slice: " + slice.from + ".."
+						+ slice.to + " instead of " + from + ".." + to);
+			}
+			return slice;
+		}
+	}
+
+	/**
+	 * send slices to a single worker until none are left or the worker
+	 * fails; the slice of a failed worker is put back. A worker not
+	 * answering within the slice timeout is disconnected, which fails the
+	 * blocked read or write.
+	 */
+	private final class Runner implements Callable<Runner> {
+		private final Link link;
+		private final Queue<int[]> ranges;
+		private final BeamProtocol.Request request;
+		private final List<BeamProtocol.Slice> slices;
+		private final ScheduledExecutorService watchdog;
+
+		Runner(final Link link, final BeamProtocol.Request request,
+				final Queue<int[]> ranges,
+				final List<BeamProtocol.Slice> slices,
+				final ScheduledExecutorService watchdog) {
+			this.link = link;
+			this.request = request;
+			this.ranges = ranges;
+			this.slices = slices;
+			this.watchdog = watchdog;
+		}
+
+		public Runner call() {
+			int[] range;
+			while ((range = ranges.poll()) != null) {
+				final ScheduledFuture<?> timeout = watchdog.schedule(
+						new Runnable() {
+							public void run() {
+								link.close();
+							}
+						}, sliceTimeout, TimeUnit.MILLISECONDS);
+				try {
+					slices.add(link.expand(request, range[0], range[1]));
+				} catch (final IOException e) {
+					ranges.add(range);
+					drop(link);
+					return this;
+				} finally {
+					timeout.cancel(false);
+				}
+			}
+			return this;
+		}
+	}
+
+	/**
+	 * maximum time to wait for started workers to connect
+	 */
+	private static final int ACCEPT_TIMEOUT_MILLIS = 60000;
+
+	/**
+	 * default maximum time a worker may take for a single slice
+	 */
+	private static final long SLICE_TIMEOUT_MILLIS = 600000;
+
+	/**
+	 * maximum time a connection may take to send the token, workers send it
+	 * right after connecting
+	 */
+	private static final int TOKEN_TIMEOUT_MILLIS = 2000;
+
+	private final CompiledCloud cloud;
+	private final List<Link> links;
+	private final List<Process> processes;
+	private final ServerSocket server;
+
+	/**
+	 * maximum time a worker may take for a single slice
+	 */
+	private volatile long sliceTimeout;
+
+	/**
+	 * secret identifying the workers of this coordinator
+	 */
+	private final String token;
+
+	/**
+	 * listen for workers on a free port of the loopback interface
+	 */
+	public BeamCoordinator(final CompiledCloud cloud) throws IOException {
+		if (cloud == null) {
+			throw new IllegalArgumentException("no cloud");
+		}
+		this.cloud = cloud;
+		links = new ArrayList<Link>();
+		processes = new ArrayList<Process>();
+		server = new ServerSocket(0, 50, InetAddress.getByName(null));
+		sliceTimeout = SLICE_TIMEOUT_MILLIS;
+		token = new BigInteger(130, new SecureRandom()).toString(32);
+	}
+
+	/**
+	 * wait for the given number of workers started elsewhere and send them
+	 * the cloud; connections not sending the token right away are closed and
+	 * don't count
+	 * @return number of connected workers
+	 */
+	public int accept(final int count, final int timeoutMillis)
+			throws IOException {
+		if (count < 0) {
+			throw new IllegalArgumentException("bad worker count: " + count);
+		}
+		if (timeoutMillis < 1) {
+			throw new IllegalArgumentException("bad timeout: " + timeoutMillis);
+		}
+		final long deadline = System.nanoTime() + timeoutMillis * 1000000L;
+		int accepted = 0;
+		while (accepted < count) {
+			final long rest = (deadline - System.nanoTime()) / 1000000;
+			if (rest < 1) {
+				break;
+			}
+			server.setSoTimeout((int) rest);
+			final Socket socket;
+			try {
+				socket = server.accept();
+			} catch (final SocketTimeoutException e) {
+				break;
+			}
+			final Link link = new Link(socket);
+			try {
+				socket.setSoTimeout((int) Math.min(rest,
+						TOKEN_TIMEOUT_MILLIS));
+				if (!isToken(BeamProtocol.readToken(link.in))) {
+					link.close();
+					continue;
+				}
+				socket.setSoTimeout(0);
+				BeamProtocol.writeCloud(link.out, cloud);
+				link.out.flush();
+			} catch (final IOException e) {
+				link.close();
+				continue;
+			}
+			synchronized (links) {
+				links.add(link);
+			}
+			accepted++;
+		}
+		return getWorkerCount();
+	}
+
+	/**
+	 * disconnect all workers and stop the started worker processes
+	 */
+	public void close() throws IOException {
+		synchronized (links) {
+			for (final Link link : links) {
+				link.close();
+			}
+			links.clear();
+		}
+		for (final Process process : processes) {
+			process.destroy();
+		}
+		processes.clear();
+		server.close();
+	}
+
+	/**
+	 * stop using a failed worker
+	 */
+	private void drop(final Link link) {
+		link.close();
+		synchronized (links) {
+			links.remove(link);
+		}
+	}
+
+	/**
+	 * extend the templates of request on all workers, one slice each; an
+	 * interruption disconnects the workers
+	 * @return the finished slices; slices left over when all workers failed
+	 *         are missing
+	 */
+	List<BeamProtocol.Slice> expand(final BeamProtocol.Request request)
+			throws InterruptedException {
+		final List<Link> current = getLinks();
+		final List<BeamProtocol.Slice> slices = Collections
+				.synchronizedList(new ArrayList<BeamProtocol.Slice>());
+		if (current.isEmpty()) {
+			return slices;
+		}
+
+		final int count = request.templates.length;
+		final Queue<int[]> ranges = new ConcurrentLinkedQueue<int[]>();
+		for (int part = 0; part < current.size(); part++) {
+			final int from = count * part / current.size();
+			final int to = count * (part + 1) / current.size();
+			if (from < to) {
+				ranges.add(new int[] { from, to });
+			}
+		}
+
+		// slices of failed workers can be put back after the other
+		// workers finished, so repeat with the remaining workers
+		List<Link> remaining = current;
+		final ScheduledExecutorService watchdog = Executors
+				.newSingleThreadScheduledExecutor();
+		try {
+			while (!ranges.isEmpty() && !remaining.isEmpty()) {
+				expandOnce(request, remaining, ranges, slices, watchdog);
+				remaining = getLinks();
+			}
+		} finally {
+			watchdog.shutdownNow();
+		}
+		return new ArrayList<BeamProtocol.Slice>(slices);
+	}
+
+	/**
+	 * hand out slices to the given workers until none are left or all of
+	 * them failed
+	 */
+	private void expandOnce(final BeamProtocol.Request request,
+			final List<Link> remaining, final Queue<int[]> ranges,
+			final List<BeamProtocol.Slice> slices,
+			final ScheduledExecutorService watchdog)
+			throws InterruptedException {
+		final ExecutorService executor = Executors
+				.newFixedThreadPool(remaining.size());
+		try {
+			final List<Runner> runners = new ArrayList<Runner>();
+			for (final Link link : remaining) {
+				runners.add(new Runner(link, request, ranges, slices,
+						watchdog));
+			}
+			for (final Future<Runner> future : executor.invokeAll(runners)) {
+				future.get();
+			}
+		} catch (final InterruptedException e) {
+			// answers still on their way would garble the next depth
+			for (final Link link : remaining) {
+				drop(link);
+			}
+			throw e;
+		} catch (final ExecutionException e) {
+			throw new IllegalStateException("distribution failed", e
+					.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * the cloud sent to the workers
+	 */
+	public CompiledCloud getCloud() {
+		return cloud;
+	}
+
+	private List<Link> getLinks() {
+		synchronized (links) {
+			return new ArrayList<Link>(links);
+		}
+	}
+
+	/**
+	 * port the workers connect to
+	 */
+	public int getPort() {
+		return server.getLocalPort();
+	}
+
+	/**
+	 * secret a worker has to send before it gets the cloud; passed to the
+	 * started workers on their command line
+	 */
+	public String getToken() {
+		return token;
+	}
+
+	/**
+	 * number of connected workers that haven't failed
+	 */
+	public int getWorkerCount() {
+		synchronized (links) {
+			return links.size();
+		}
+	}
+
+	/**
+	 * check a token sent by a worker in constant time
+	 */
+	private boolean isToken(final String sent) throws IOException {
+		return MessageDigest.isEqual(token.getBytes("UTF-8"), sent
+				.getBytes("UTF-8"));
+	}
+
+	/**
+	 * maximum time a worker may take to extend a single slice, 10 minutes
+	 * by default; a worker exceeding it is disconnected and its slice is
+	 * passed on like the slice of a crashed worker
+	 */
+	public void setSliceTimeout(final long timeoutMillis) {
+		if (timeoutMillis < 1) {
+			throw new IllegalArgumentException("bad timeout: " + timeoutMillis);
+		}
+		sliceTimeout = timeoutMillis;
+	}
+
+	/**
+	 * start the given number of worker processes using the class path and
+	 * Java runtime of this process and wait for them to connect
+	 * @return number of connected workers
+	 */
+	public int startWorkers(final int count) throws IOException {
+		if (count < 1) {
+			throw new IllegalArgumentException("bad worker count: " + count);
+		}
+		final String java = System.getProperty("java.home") + File.separator
+				+ "bin" + File.separator + "java";
+		for (int i = 0; i < count; i++) {
+			final ProcessBuilder builder = new ProcessBuilder(java, "-cp",
+					System.getProperty("java.class.path"), BeamWorker.class
+							.getName(), Integer.toString(getPort()), token);
+			builder.redirectErrorStream(true);
+			final Process process = builder.start();
+			processes.add(process);
+			final Thread drain = new Thread(new Drain(process
+					.getInputStream()), "BeamWorker output");
+			drain.setDaemon(true);
+			drain.start();
+		}
+		return accept(count, ACCEPT_TIMEOUT_MILLIS);
+	}
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2015 Thomas Kuehne <thomas@kuehne.cn>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package cn.kuehne.kinaseblender.engine2;
+
+/**
+ * decides how many candidates SearchState retains between depths
+ */
+public abstract class BeamPolicy {
+	/**
+	 * grow when most candidates reaching the lowest retained score don't
+	 * fit into the beam, shrink when it isn't full
+	 */
+	public static class Adaptive extends BeamPolicy {
+		/**
+		 * grow if more than this fraction of the candidates reaching the
+		 * lowest retained score is dropped
+		 */
+		private static final double GROW_DROPPED = 0.5;
+
+		private final int initial;
+		private final int max;
+		private final int min;
+
+		/**
+		 * start with the default width, at least 1/4 and at most 16 times of
+		 * it
+		 */
+		public Adaptive(final CompiledCloud cloud) {
+			this(cloud.calculateBufferCapacity());
+		}
+
+		private Adaptive(final int initial) {
+			this(initial, Math.max(1, initial / 4), (int) Math.min(
+					Integer.MAX_VALUE, 16L * initial));
+		}
+
+		public Adaptive(final int initial, final int min, final int max) {
+			if (min < 1 || initial < min || max < initial) {
+				throw new IllegalArgumentException("bad widths: " + min
+						+ " <= " + initial + " <= " + max);
+			}
+			this.initial = initial;
+			this.min = min;
+			this.max = max;
+		}
+
+		@Override
+		public int getWidth(final CompiledCloud cloud,
+				final BeamStatistics last) {
+			if (last == null) {
+				return initial;
+			}
+			final int width = last.getWidth();
+			if (last.getKept() < width) {
+				// everything fit: never grow
+				return limit(Math.min(width, Math.max(width / 2,
+						2L * last.getKept())));
+			}
+			final int contenders = last.getContenders();
+			if (GROW_DROPPED * contenders < contenders - last.getKept()) {
+				return limit(2L * width);
+			}
+			return limit(width);
+		}
+
+		/**
+		 * clamp the given width to min .. max
+		 */
+		private int limit(final long width) {
+			return (int) Math.max(min, Math.min(max, width));
+		}
+	}
+
+	/**
+	 * same width for all depths
+	 */
+	public static class Fixed extends BeamPolicy {
+		/**
+		 * width, 0 for the default width of the cloud
+		 */
+		private final int width;
+
+		/**
+		 * default width: CompiledCloud.calculateBufferCapacity()
+		 */
+		public Fixed() {
+			width = 0;
+		}
+
+		public Fixed(final int width) {
+			if (width < 1) {
+				throw new IllegalArgumentException("bad width: " + width);
+			}
+			this.width = width;
+		}
+
+		@Override
+		public int getWidth(final CompiledCloud cloud,
+				final BeamStatistics last) {
+			return (width == 0) ? cloud.calculateBufferCapacity() : width;
+		}
+	}
+
+	/**
+	 * as many candidates as fit into a memory budget
+	 */
+	public static class Memory extends BeamPolicy {
+		private final long bytes;
+
+		/**
+		 * @param bytes memory available to the retained candidates of a
+		 *        single beam; every search thread uses a beam of its own
+		 */
+		public Memory(final long bytes) {
+			if (bytes < 1) {
+				throw new IllegalArgumentException("bad budget: " + bytes);
+			}
+			this.bytes = bytes;
+		}
+
+		@Override
+		public int getWidth(final CompiledCloud cloud,
+				final BeamStatistics last) {
+			final int sources = (last == null) ? 1 : last.getDeepth() + 1;
+			final long width = bytes / cloud.getCandidateBytes(sources);
+			return (int) Math.max(1, Math.min(Integer.MAX_VALUE, width));
+		}
+	}
+
+	/**
+	 * maximum number of candidates retained after the next depth
+	 * @param last statistics of the previous depth, null for the first depth
+	 */
+	public abstract int getWidth(CompiledCloud cloud, BeamStatistics last);
+}
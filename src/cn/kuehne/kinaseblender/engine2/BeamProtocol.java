@@ -0,0 +1,307 @@
+/*
+ * Copyright (c) 2015 Thomas Kuehne <thomas@kuehne.cn>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package cn.kuehne.kinaseblender.engine2;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * messages between BeamCoordinator and BeamWorker. A connection starts with
+ * the token of the coordinator sent by the worker and the cloud sent by the
+ * coordinator. It continues with any number of DEPTH messages, carrying the
+ * parameters and templates of a depth, and TASK messages, carrying a range
+ * of the templates of the last depth and answered by a result. Closing the
+ * connection ends the worker.
+ */
+final class BeamProtocol {
+	/**
+	 * the parameters of a search depth shared by all of its slices
+	 */
+	static final class Request {
+		final int minScore;
+		final int pruneBelow;
+		final boolean random;
+		final long randomSeed;
+		final boolean reduce;
+		final int startScore;
+
+		/**
+		 * ascending source indices of all templates of the depth
+		 */
+		final int[][] templates;
+
+		final int width;
+
+		Request(final boolean reduce, final boolean random,
+				final long randomSeed, final int width, final int minScore,
+				final int startScore, final int pruneBelow,
+				final int[][] templates) {
+			this.reduce = reduce;
+			this.random = random;
+			this.randomSeed = randomSeed;
+			this.width = width;
+			this.minScore = minScore;
+			this.startScore = startScore;
+			this.pruneBelow = pruneBelow;
+			this.templates = templates;
+		}
+	}
+
+	/**
+	 * the result of extending the templates from .. to - 1
+	 */
+	static final class Slice {
+		int accepted;
+
+		/**
+		 * ascending source indices of the optimum combinations
+		 */
+		int[][] best;
+
+		long candidates;
+
+		/**
+		 * candidates reaching the accept score by score above the minimal
+		 * score
+		 */
+		int[] counts;
+
+		long duplicates;
+		int evicted;
+		final int from;
+
+		/**
+		 * ascending source indices of the retained combinations
+		 */
+		int[][] kept;
+
+		int offered;
+		long prunedSources;
+		long prunedTemplates;
+
+		/**
+		 * score of the combinations in best
+		 */
+		int score;
+
+		final int to;
+
+		Slice(final int from, final int to) {
+			this.from = from;
+			this.to = to;
+		}
+	}
+
+	/**
+	 * the parameters and templates of the following tasks
+	 */
+	static final byte DEPTH = 2;
+
+	/**
+	 * first word of a connection
+	 */
+	static final int MAGIC = 0x4b424332;
+
+	/**
+	 * extend a slice of templates
+	 */
+	static final byte TASK = 1;
+
+	/**
+	 * read a cloud written by writeCloud
+	 */
+	static CompiledCloud readCloud(final DataInputStream in)
+			throws IOException {
+		final Source[] sources = new Source[in.readInt()];
+		for (int si = 0; si < sources.length; si++) {
+			sources[si] = new Source(in.readUTF());
+		}
+		final Product[] products = new Product[in.readInt()];
+		for (int pi = 0; pi < products.length; pi++) {
+			products[pi] = new Product(in.readUTF());
+		}
+		final int[][] produces = new int[sources.length][];
+		final float[][] amounts = new float[sources.length][];
+		for (int si = 0; si < sources.length; si++) {
+			produces[si] = new int[in.readInt()];
+			amounts[si] = new float[produces[si].length];
+			for (int i = 0; i < produces[si].length; i++) {
+				produces[si][i] = in.readInt();
+				amounts[si][i] = in.readFloat();
+			}
+		}
+		return new CompiledCloud(sources, products, new SparseCoverage(
+				products.length, produces, amounts));
+	}
+
+	private static int[][] readIndices(final DataInputStream in)
+			throws IOException {
+		final int[][] back = new int[in.readInt()][];
+		for (int i = 0; i < back.length; i++) {
+			back[i] = readInts(in);
+		}
+		return back;
+	}
+
+	private static int[] readInts(final DataInputStream in)
+			throws IOException {
+		final int[] back = new int[in.readInt()];
+		for (int i = 0; i < back.length; i++) {
+			back[i] = in.readInt();
+		}
+		return back;
+	}
+
+	/**
+	 * read the parameters written by writeRequest
+	 */
+	static Request readRequest(final DataInputStream in) throws IOException {
+		final boolean reduce = in.readBoolean();
+		final boolean random = in.readBoolean();
+		final long randomSeed = in.readLong();
+		final int width = in.readInt();
+		final int minScore = in.readInt();
+		final int startScore = in.readInt();
+		final int pruneBelow = in.readInt();
+		return new Request(reduce, random, randomSeed, width, minScore,
+				startScore, pruneBelow, readIndices(in));
+	}
+
+	/**
+	 * read the token written by writeToken
+	 */
+	static String readToken(final DataInputStream in) throws IOException {
+		final int magic = in.readInt();
+		if (magic != MAGIC) {
+			throw new IOException("bad protocol: " + Integer.toHexString(magic));
+		}
+		return in.readUTF();
+	}
+
+	/**
+	 * read a result written by writeSlice
+	 */
+	static Slice readSlice(final DataInputStream in) throws IOException {
+		final Slice slice = new Slice(in.readInt(), in.readInt());
+		slice.score = in.readInt();
+		slice.best = readIndices(in);
+		slice.kept = readIndices(in);
+		slice.offered = in.readInt();
+		slice.accepted = in.readInt();
+		slice.evicted = in.readInt();
+		slice.counts = readInts(in);
+		slice.candidates = in.readLong();
+		slice.duplicates = in.readLong();
+		slice.prunedTemplates = in.readLong();
+		slice.prunedSources = in.readLong();
+		return slice;
+	}
+
+	/**
+	 * write names, product indices and amounts of all sources
+	 */
+	static void writeCloud(final DataOutputStream out,
+			final CompiledCloud cloud) throws IOException {
+		out.writeInt(cloud.sources.length);
+		for (final Source source : cloud.sources) {
+			out.writeUTF(source.getName());
+		}
+		out.writeInt(cloud.products.length);
+		for (final Product product : cloud.products) {
+			out.writeUTF(product.getName());
+		}
+		for (int si = 0; si < cloud.sources.length; si++) {
+			final int[] row = cloud.coverage.products(si);
+			out.writeInt(row.length);
+			for (final int pi : row) {
+				out.writeInt(pi);
+				out.writeFloat(cloud.coverage.getValue(si, pi));
+			}
+		}
+	}
+
+	private static void writeIndices(final DataOutputStream out,
+			final int[][] indices) throws IOException {
+		out.writeInt(indices.length);
+		for (final int[] entry : indices) {
+			writeInts(out, entry);
+		}
+	}
+
+	private static void writeInts(final DataOutputStream out,
+			final int[] values) throws IOException {
+		out.writeInt(values.length);
+		for (final int value : values) {
+			out.writeInt(value);
+		}
+	}
+
+	/**
+	 * write the parameters of a depth
+	 */
+	static void writeRequest(final DataOutputStream out, final Request request)
+			throws IOException {
+		out.writeBoolean(request.reduce);
+		out.writeBoolean(request.random);
+		out.writeLong(request.randomSeed);
+		out.writeInt(request.width);
+		out.writeInt(request.minScore);
+		out.writeInt(request.startScore);
+		out.writeInt(request.pruneBelow);
+		writeIndices(out, request.templates);
+	}
+
+	/**
+	 * write the result of a slice
+	 */
+	static void writeSlice(final DataOutputStream out, final Slice slice)
+			throws IOException {
+		out.writeInt(slice.from);
+		out.writeInt(slice.to);
+		out.writeInt(slice.score);
+		writeIndices(out, slice.best);
+		writeIndices(out, slice.kept);
+		out.writeInt(slice.offered);
+		out.writeInt(slice.accepted);
+		out.writeInt(slice.evicted);
+		writeInts(out, slice.counts);
+		out.writeLong(slice.candidates);
+		out.writeLong(slice.duplicates);
+		out.writeLong(slice.prunedTemplates);
+		out.writeLong(slice.prunedSources);
+	}
+
+	/**
+	 * write the token identifying a worker of the coordinator
+	 */
+	static void writeToken(final DataOutputStream out, final String token)
+			throws IOException {
+		out.writeInt(MAGIC);
+		out.writeUTF(token);
+	}
+
+	private BeamProtocol() {
+	}
+}
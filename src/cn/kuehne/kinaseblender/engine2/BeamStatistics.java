@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2015 Thomas Kuehne <thomas@kuehne.cn>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package cn.kuehne.kinaseblender.engine2;
+
+/**
+ * beam statistics of a single finished search depth
+ */
+public final class BeamStatistics {
+	private final int accepted;
+	private final int contenders;
+	private final int deepth;
+	private final int evicted;
+	private final int kept;
+	private final int offered;
+	private final int prunedSources;
+	private final int prunedTemplates;
+	private final int width;
+
+	BeamStatistics(final int deepth, final int width, final int offered,
+			final int accepted, final int evicted, final int kept,
+			final int contenders, final int prunedTemplates,
+			final int prunedSources) {
+		this.deepth = deepth;
+		this.width = width;
+		this.offered = offered;
+		this.accepted = accepted;
+		this.evicted = evicted;
+		this.kept = kept;
+		this.contenders = contenders;
+		this.prunedTemplates = prunedTemplates;
+		this.prunedSources = prunedSources;
+	}
+
+	/**
+	 * number of candidates entering the beam; with several threads the sum
+	 * over the per thread beams, so it depends on the number of threads
+	 */
+	public int getAccepted() {
+		return accepted;
+	}
+
+	/**
+	 * number of scored candidates reaching the lowest score retained for
+	 * the next depth, including the ones that didn't fit; the same for any
+	 * number of threads
+	 */
+	public int getContenders() {
+		return contenders;
+	}
+
+	/**
+	 * number of sources
+	 */
+	public int getDeepth() {
+		return deepth;
+	}
+
+	/**
+	 * number of candidates pushed out of the beam by better ones; with
+	 * several threads the sum over the per thread beams, so it depends on
+	 * the number of threads
+	 */
+	public int getEvicted() {
+		return evicted;
+	}
+
+	/**
+	 * number of candidates retained for the next depth
+	 */
+	public int getKept() {
+		return kept;
+	}
+
+	/**
+	 * number of scored candidates reaching the minimal score, including
+	 * duplicates; pruned candidates aren't scored
+	 */
+	public int getOffered() {
+		return offered;
+	}
+
+	/**
+	 * number of template sources not tried because the template score plus
+	 * their gain bound couldn't reach the cutoff, including sources of
+	 * pruned templates
+	 */
+	public int getPrunedSources() {
+		return prunedSources;
+	}
+
+	/**
+	 * number of templates not extended because their score plus the
+	 * largest gain bound couldn't reach the cutoff
+	 */
+	public int getPrunedTemplates() {
+		return prunedTemplates;
+	}
+
+	/**
+	 * maximum number of candidates retained for the next depth
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	@Override
+	public String toString() {
+		return "depth " + deepth + ": width " + width + ", offered " + offered
+				+ ", accepted " + accepted + ", evicted " + evicted
+				+ ", kept " + kept + ", contenders " + contenders
+				+ ", pruned templates " + prunedTemplates
+				+ ", pruned sources " + prunedSources;
+	}
+}
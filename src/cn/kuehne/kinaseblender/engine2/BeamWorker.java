@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2015 Thomas Kuehne <thomas@kuehne.cn>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package cn.kuehne.kinaseblender.engine2;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+
+import cn.kuehne.kinaseblender.engine2.CompiledCloud.SearchState;
+
+/**
+ * worker process of a distributed beam search: connects to a
+ * BeamCoordinator on this machine, identifies itself by the token of the
+ * coordinator, receives its cloud and extends the template slices it is
+ * sent until the coordinator closes the connection
+ */
+public class BeamWorker {
+	/**
+	 * usage: BeamWorker port token
+	 */
+	public static void main(final String[] args) throws IOException {
+		if (args.length != 2) {
+			System.err.println("usage: BeamWorker port token");
+			System.exit(1);
+		}
+		final Socket socket = new Socket(InetAddress.getByName(null), Integer
+				.parseInt(args[0]));
+		try {
+			new BeamWorker(socket, args[1]).run();
+		} finally {
+			socket.close();
+		}
+	}
+
+	private final DataInputStream in;
+	private final DataOutputStream out;
+	private final String token;
+
+	/**
+	 * @param token BeamCoordinator.getToken() of the coordinator
+	 */
+	public BeamWorker(final Socket socket, final String token)
+			throws IOException {
+		if (socket == null) {
+			throw new IllegalArgumentException("no socket");
+		}
+		if (token == null) {
+			throw new IllegalArgumentException("no token");
+		}
+		this.token = token;
+		socket.setTcpNoDelay(true);
+		in = new DataInputStream(new BufferedInputStream(socket
+				.getInputStream()));
+		out = new DataOutputStream(new BufferedOutputStream(socket
+				.getOutputStream()));
+	}
+
+	/**
+	 * serve tasks until the coordinator closes the connection
+	 */
+	public void run() throws IOException {
+		BeamProtocol.writeToken(out, token);
+		out.flush();
+		final CompiledCloud cloud = BeamProtocol.readCloud(in);
+		try {
+			final SearchState state = cloud.initSearch();
+			BeamProtocol.Request request = null;
+			while (true) {
+				final int command = in.read();
+				if (command < 0) {
+					return;
+				}
+				if (command == BeamProtocol.DEPTH) {
+					request = BeamProtocol.readRequest(in);
+				} else if (command != BeamProtocol.TASK) {
+					throw new IOException("bad command: " + command);
+				} else if (request == null) {
+					throw new IOException("task without depth");
+				} else {
+					final int from = in.readInt();
+					final int to = in.readInt();
+					BeamProtocol.writeSlice(out, state.expandSlice(request,
+							from, to));
+					out.flush();
+				}
+			}
+		} finally {
+			cloud.close();
+		}
+	}
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2015 Thomas Kuehne <thomas@kuehne.cn>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package cn.kuehne.kinaseblender.engine2;
+
+import java.nio.LongBuffer;
+
+/**
+ * word-wide helpers for packed bit sets
+ */
+final class Bits {
+	/**
+	 * number of longs required to store the given number of bits
+	 */
+	static int words(final int bits) {
+		return (bits + 63) >>> 6;
+	}
+
+	/**
+	 * test a single bit
+	 */
+	static boolean get(final long[] set, final int bit) {
+		return 0 != (set[bit >>> 6] & (1L << bit));
+	}
+
+	/**
+	 * set a single bit
+	 */
+	static void set(final long[] set, final int bit) {
+		set[bit >>> 6] |= 1L << bit;
+	}
+
+	/**
+	 * number of set bits
+	 */
+	static int count(final long[] set) {
+		return Kernel.ACTIVE.count(set);
+	}
+
+	/**
+	 * number of set bits in the given words of a buffer
+	 */
+	static int count(final LongBuffer set, final int offset, final int words) {
+		return Kernel.ACTIVE.count(set, offset, words);
+	}
+
+	/**
+	 * weight of the bits of row not yet set in covered
+	 * @param weights weight per bit; null if every bit counts 1
+	 */
+	static int gain(final long[] covered, final long[] row,
+			final int[] weights) {
+		return Kernel.ACTIVE.gain(covered, row, weights);
+	}
+
+	/**
+	 * weight of the bits of the row starting at offset not yet set in
+	 * covered
+	 * @param weights weight per bit; null if every bit counts 1
+	 */
+	static int gain(final long[] covered, final LongBuffer row,
+			final int offset, final int[] weights) {
+		return Kernel.ACTIVE.gain(covered, row, offset, weights);
+	}
+
+	/**
+	 * target |= row
+	 * @param weights weight per bit; null if every bit counts 1
+	 * @return weight of the bits newly set in target
+	 */
+	static int orGain(final long[] target, final long[] row,
+			final int[] weights) {
+		return Kernel.ACTIVE.orGain(target, row, weights);
+	}
+
+	/**
+	 * target |= the row starting at offset
+	 * @param weights weight per bit; null if every bit counts 1
+	 * @return weight of the bits newly set in target
+	 */
+	static int orGain(final long[] target, final LongBuffer row,
+			final int offset, final int[] weights) {
+		return Kernel.ACTIVE.orGain(target, row, offset, weights);
+	}
+
+	/**
+	 * twice |= once & row, then once |= row
+	 */
+	static void orTwice(final long[] once, final long[] twice,
+			final long[] row) {
+		for (int wi = 0; wi < row.length; wi++) {
+			twice[wi] |= once[wi] & row[wi];
+			once[wi] |= row[wi];
+		}
+	}
+
+	/**
+	 * set the given bit
+	 * @param weights weight per bit; null if every bit counts 1
+	 * @return weight of the bit if it wasn't set before, otherwise 0
+	 */
+	static int setGain(final long[] set, final int index, final int[] weights) {
+		final int wi = index >>> 6;
+		final long mask = 1L << index;
+		if ((set[wi] & mask) != 0) {
+			return 0;
+		}
+		set[wi] |= mask;
+		return (weights == null) ? 1 : weights[index];
+	}
+
+	/**
+	 * weight of the bits of the word at the given word index
+	 * @param weights weight per bit; null if every bit counts 1
+	 */
+	static int weight(final int wordIndex, final long word, final int[] weights) {
+		if (weights == null) {
+			return Long.bitCount(word);
+		}
+		int sum = 0;
+		long rest = word;
+		while (rest != 0) {
+			sum += weights[(wordIndex << 6) + Long.numberOfTrailingZeros(rest)];
+			rest &= rest - 1;
+		}
+		return sum;
+	}
+
+	private Bits() {
+	}
+}
@@ -27,6 +27,8 @@ import java.io.IOException;
 import java.io.LineNumberReader;
 import java.io.Reader;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.NavigableMap;
 import java.util.NavigableSet;
@@ -38,6 +40,45 @@ import java.util.regex.Pattern;
  * slow intermediate storage for Source-Product data
  */
 public class Cloud {
+	/**
+	 * storage variants of a CompiledCloud
+	 */
+	public enum Layout {
+		/**
+		 * SPARSE for low densities, DIRECT if DENSE would use too much heap
+		 */
+		AUTO,
+		/**
+		 * packed bit sets and amount arrays on the Java heap
+		 */
+		DENSE,
+		/**
+		 * packed bit sets and amounts outside of the Java heap
+		 */
+		DIRECT,
+		/**
+		 * sorted product indices and amounts on the Java heap
+		 */
+		SPARSE
+	}
+
+	/**
+	 * approximate heap usage of a single Source-Product pair in a DENSE cloud
+	 */
+	private static final double DENSE_CELL_BYTES = 4.125;
+
+	/**
+	 * dense clouds requiring more than this fraction of the maximum heap are
+	 * compiled off-heap
+	 */
+	public static final double DIRECT_HEAP_FRACTION = 0.25;
+
+	/**
+	 * clouds with less than this fraction of Source-Product pairs are
+	 * compiled into a sparse CompiledCloud
+	 */
+	public static final double SPARSE_DENSITY = 0.05;
+
 	private static final Pattern TAB = Pattern.compile("\t");
 
 	private static String rtrim(final String raw) {
@@ -56,8 +97,15 @@ public class Cloud {
 
 	private final NavigableMap<Source, TreeMap<Product, Float>> map;
 
+	/**
+	 * name to element maps
+	 */
+	private final Map<String, Product> productNames;
+
 	private final NavigableSet<Product> products;
 
+	private final Map<String, Source> sourceNames;
+
 	private final NavigableSet<Source> sources;
 
 	public Cloud() {
@@ -65,6 +113,8 @@ public class Cloud {
 		sources = new TreeSet<Source>(comparator);
 		products = new TreeSet<Product>(comparator);
 		map = new TreeMap<Source, TreeMap<Product, Float>>(comparator);
+		sourceNames = new HashMap<String, Source>();
+		productNames = new HashMap<String, Product>();
 	}
 
 	/**
@@ -78,7 +128,11 @@ public class Cloud {
 		if (name == null) {
 			throw new IllegalArgumentException("products's name is null");
 		}
-		return products.add(product);
+		if (products.add(product)) {
+			productNames.put(name, product);
+			return true;
+		}
+		return false;
 	}
 
 	/**
@@ -93,17 +147,84 @@ public class Cloud {
 			throw new IllegalArgumentException("source's name is null");
 		}
 
-		return sources.add(source);
+		if (sources.add(source)) {
+			sourceNames.put(name, source);
+			return true;
+		}
+		return false;
 	}
 
 	/**
-	 * transform into an optimized, read-only CompiledCloud 
+	 * transform into an optimized, read-only CompiledCloud using an
+	 * automatically chosen Layout
 	 */
 	public CompiledCloud compile() {
+		return compile(Layout.AUTO);
+	}
+
+	/**
+	 * transform into an optimized, read-only CompiledCloud
+	 */
+	public CompiledCloud compile(final Layout layout) {
+		if (layout == null) {
+			throw new IllegalArgumentException("layout is null");
+		}
 		final Source[] sBack = getSources();
 		final Product[] pBack = getProducts();
 
-		boolean[][] data = new boolean[sBack.length][pBack.length];
+		Layout chosen = layout;
+		if (chosen == Layout.AUTO) {
+			long entries = 0;
+			for (final TreeMap<Product, Float> produceMap : map.values()) {
+				entries += produceMap.size();
+			}
+			final double cells = (double) sBack.length * pBack.length;
+			if (entries / cells < SPARSE_DENSITY) {
+				chosen = Layout.SPARSE;
+			} else if (Runtime.getRuntime().maxMemory() * DIRECT_HEAP_FRACTION < cells
+					* DENSE_CELL_BYTES) {
+				chosen = Layout.DIRECT;
+			} else {
+				chosen = Layout.DENSE;
+			}
+		}
+
+		final Coverage coverage;
+		switch (chosen) {
+		case SPARSE:
+			coverage = compileSparse(sBack, pBack);
+			break;
+		case DIRECT:
+			coverage = compileDirect(sBack, pBack);
+			break;
+		default:
+			coverage = compileDense(sBack, pBack);
+			break;
+		}
+		return new CompiledCloud(sBack, pBack, coverage);
+	}
+
+	private Coverage compileDirect(final Source[] sBack, final Product[] pBack) {
+		final DirectCoverage coverage = new DirectCoverage(sBack.length,
+				pBack.length, true);
+
+		for (int sourceIndex = 0; sourceIndex < sBack.length; sourceIndex++) {
+			final TreeMap<Product, Float> produceMap = map
+					.get(sBack[sourceIndex]);
+			if (produceMap != null) {
+				for (final Entry<Product, Float> entry : produceMap.entrySet()) {
+					final int productIndex = Arrays.binarySearch(pBack,
+							entry.getKey(), comparator);
+					coverage.set(sourceIndex, productIndex, entry.getValue());
+				}
+			}
+		}
+
+		return coverage;
+	}
+
+	private Coverage compileDense(final Source[] sBack, final Product[] pBack) {
+		long[][] data = new long[sBack.length][Bits.words(pBack.length)];
 		float[][] valueData = new float[sBack.length][pBack.length];
 
 		for (int sourceIndex = 0; sourceIndex < sBack.length; sourceIndex++) {
@@ -113,13 +234,38 @@ public class Cloud {
 				for (final Entry<Product, Float> entry : produceMap.entrySet()) {
 					final int productIndex = Arrays.binarySearch(pBack,
 							entry.getKey(), comparator);
-					data[sourceIndex][productIndex] = true;
+					Bits.set(data[sourceIndex], productIndex);
 					valueData[sourceIndex][productIndex] = entry.getValue();
 				}
 			}
 		}
 
-		return new CompiledCloud(sBack, pBack, data, valueData);
+		return new DenseCoverage(pBack.length, data, valueData);
+	}
+
+	private Coverage compileSparse(final Source[] sBack, final Product[] pBack) {
+		final int[][] data = new int[sBack.length][];
+		final float[][] valueData = new float[sBack.length][];
+
+		for (int sourceIndex = 0; sourceIndex < sBack.length; sourceIndex++) {
+			final TreeMap<Product, Float> produceMap = map
+					.get(sBack[sourceIndex]);
+			final int size = (produceMap == null) ? 0 : produceMap.size();
+			data[sourceIndex] = new int[size];
+			valueData[sourceIndex] = new float[size];
+			if (produceMap != null) {
+				// produceMap and pBack share the same order
+				int index = 0;
+				for (final Entry<Product, Float> entry : produceMap.entrySet()) {
+					data[sourceIndex][index] = Arrays.binarySearch(pBack,
+							entry.getKey(), comparator);
+					valueData[sourceIndex][index] = entry.getValue();
+					index++;
+				}
+			}
+		}
+
+		return new SparseCoverage(pBack.length, data, valueData);
 	}
 
 	public Product createProduct(final String name) {
@@ -137,12 +283,7 @@ public class Cloud {
 		if (name == null) {
 			throw new IllegalArgumentException("products's name is null");
 		}
-		for (Product p : products) {
-			if (name.equals(p.getName())) {
-				return p;
-			}
-		}
-		return null;
+		return productNames.get(name);
 	}
 
 	/**
@@ -166,12 +307,7 @@ public class Cloud {
 		if (name == null) {
 			throw new IllegalArgumentException("source's name is null");
 		}
-		for (Source s : sources) {
-			if (name.equals(s.getName())) {
-				return s;
-			}
-		}
-		return null;
+		return sourceNames.get(name);
 	}
 
 	/**
@@ -64,10 +64,9 @@ public class Combination {
 
 			for (int sourceIndex = sources.length - 1; -1 < sourceIndex; sourceIndex--) {
 				if (sources[sourceIndex]) {
-					for (int productIndex = products.length - 1; -1 < productIndex; productIndex--) {
-						if (cloud.data[sourceIndex][productIndex]) {
-							products[productIndex]++;
-						}
+					for (final int productIndex : cloud.coverage
+							.products(sourceIndex)) {
+						products[productIndex]++;
 					}
 				}
 			}
@@ -140,9 +139,10 @@ public class Combination {
 		final ArrayList<Source> back = new ArrayList<Source>();
 		final int productIndex = cloud.getProduct(product);
 		if (0 < products[productIndex]) {
-			for (int sourceIndex = 0; sourceIndex < sources.length; sourceIndex++) {
-				if (sources[sourceIndex]
-						&& cloud.data[sourceIndex][productIndex]) {
+			final int end = cloud.producerStart[productIndex + 1];
+			for (int i = cloud.producerStart[productIndex]; i < end; i++) {
+				final int sourceIndex = cloud.producerIndex[i];
+				if (sources[sourceIndex]) {
 					back.add(cloud.sources[sourceIndex]);
 				}
 			}
@@ -157,21 +157,18 @@ public class Combination {
 	public int getUniqueProducts(final Source source) {
 		ensureProducts();
 
-		for (int sourceIndex = 0; sourceIndex < sources.length; sourceIndex++) {
-			if (cloud.sources[sourceIndex].equals(source)
-					&& sources[sourceIndex]) {
-				int unique = 0;
-				for (int productIndex = 0; productIndex < products.length; productIndex++) {
-					if (cloud.data[sourceIndex][productIndex]
-							&& 1 == products[productIndex]) {
-						unique++;
-					}
-				}
-				return unique;
-			}
+		final int sourceIndex = cloud.getSource(source);
+		if (sourceIndex < 0 || !sources[sourceIndex]) {
+			return -1;
 		}
 
-		return -1;
+		int unique = 0;
+		for (final int productIndex : cloud.coverage.products(sourceIndex)) {
+			if (1 == products[productIndex]) {
+				unique++;
+			}
+		}
+		return unique;
 	}
 
 	/**
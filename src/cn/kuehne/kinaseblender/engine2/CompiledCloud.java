@@ -23,219 +23,1355 @@
 
 package cn.kuehne.kinaseblender.engine2;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.NavigableSet;
+import java.util.Random;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /*
  * fast processing storage for Source-Product data
  */
-public class CompiledCloud {
+public class CompiledCloud implements Closeable {
+	/**
+	 * products are only grouped into columns if that removes at least 10% of
+	 * the columns
+	 */
+	private static final double MAX_COLUMN_FRACTION = 0.9;
+
+	/**
+	 * seed of the random source keys; fixed to get reproducible hashes
+	 */
+	private static final long SOURCE_KEY_SEED = 0x6b696e617365L;
+
+	/**
+	 * hash key: sources producing a product
+	 */
+	private final class Producers {
+		private final int productIndex;
+
+		Producers(final int productIndex) {
+			this.productIndex = productIndex;
+		}
+
+		@Override
+		public boolean equals(final Object other) {
+			if (other instanceof Producers) {
+				final int otherIndex = ((Producers) other).productIndex;
+				final int start = producerStart[productIndex];
+				final int otherStart = producerStart[otherIndex];
+				final int length = producerStart[productIndex + 1] - start;
+				if (length != producerStart[otherIndex + 1] - otherStart) {
+					return false;
+				}
+				for (int i = 0; i < length; i++) {
+					if (producerIndex[start + i] != producerIndex[otherStart
+							+ i]) {
+						return false;
+					}
+				}
+				return true;
+			}
+			return false;
+		}
+
+		@Override
+		public int hashCode() {
+			int hash = 1;
+			final int end = producerStart[productIndex + 1];
+			for (int i = producerStart[productIndex]; i < end; i++) {
+				hash = 31 * hash + producerIndex[i];
+			}
+			return hash;
+		}
+	}
+
 	/**
 	 * dynamic, intermediate combination used to find optimum combinations
 	 */
 	final class SearchComb implements Comparable<SearchComb>, Scored {
-		final boolean[] prods;
+		/**
+		 * Zobrist hash of ids: xor of the keys of all contained sources
+		 */
+		long fingerprint;
+
+		/**
+		 * position in generation order, see SearchState.generation
+		 */
+		long generation;
+
+		/**
+		 * ascending indices of the contained sources; replaced, never
+		 * modified, so copies can share it
+		 */
+		int[] ids;
+
+		final long[] prods;
 		int score;
-		final boolean[] subs;
 
 		SearchComb() {
-			subs = new boolean[sources.length];
-			prods = new boolean[products.length];
+			ids = new int[0];
+			prods = new long[Bits.words(columns.productCount())];
+		}
+
+		SearchComb(final SearchComb master) {
+			ids = master.ids;
+			prods = master.prods.clone();
+			score = master.score;
+			fingerprint = master.fingerprint;
+		}
+
+		/**
+		 * the combination containing the lowest source index not contained
+		 * in both is greater
+		 */
+		public int compareTo(final SearchComb other) {
+			if (other == null) {
+				return -1;
+			}
+
+			final int length = Math.min(ids.length, other.ids.length);
+			for (int i = 0; i < length; i++) {
+				if (ids[i] != other.ids[i]) {
+					return (ids[i] < other.ids[i]) ? 1 : -1;
+				}
+			}
+			return ids.length - other.ids.length;
+		}
+
+		/**
+		 * check if the given source is contained
+		 */
+		boolean contains(final int sourceIndex) {
+			return -1 < Arrays.binarySearch(ids, sourceIndex);
+		}
+
+		@Override
+		public boolean equals(final Object other) {
+			if (other instanceof SearchComb) {
+				final SearchComb comb = (SearchComb) other;
+				return fingerprint == comb.fingerprint && 0 == compareTo(comb);
+			}
+			return false;
+		}
+
+		/**
+		 * number of products
+		 */
+		public int getScore() {
+			return score;
+		}
+
+		@Override
+		public int hashCode() {
+			return (int) (fingerprint ^ (fingerprint >>> 32));
+		}
+
+		/**
+		 * highest index of the contained sources, -1 if empty
+		 */
+		int last() {
+			return (ids.length == 0) ? -1 : ids[ids.length - 1];
+		}
+
+		/**
+		 * add the given source and it's products; the score grows by the
+		 * weight of the products not covered before
+		 * @return number of total products if new products have been encountered
+		 */
+		protected int set(final int sourceIndex) {
+			final int position = Arrays.binarySearch(ids, sourceIndex);
+			if (position < 0) {
+				final int insert = -position - 1;
+				final int[] next = new int[ids.length + 1];
+				System.arraycopy(ids, 0, next, 0, insert);
+				next[insert] = sourceIndex;
+				System.arraycopy(ids, insert, next, insert + 1, ids.length
+						- insert);
+				ids = next;
+				fingerprint ^= sourceKeys[sourceIndex];
+			}
+			final int gain = columns.orGain(sourceIndex, prods, columnWeights);
+			score += gain;
+			return (0 < gain ? score : 0);
+		}
+
+		/**
+		 * flags of the contained sources
+		 */
+		boolean[] toSources() {
+			final boolean[] back = new boolean[sources.length];
+			for (final int si : ids) {
+				back[si] = true;
+			}
+			return back;
+		}
+	}
+	
+	/**
+	 * calculate the maximum number of combinations retained between search rounds
+	 */
+	public int calculateBufferCapacity(){
+		final int s = getSourceCount();
+		return (int) (s * Math.log(s + Math.E));
+	}
+
+	/**
+	 * store current search state
+	 */
+	public class SearchState implements Search {
+		/**
+		 * extend a slice of the templates on a worker thread
+		 */
+		private final class Expansion implements Callable<Expansion> {
+			final NavigableSet<SearchComb> best;
+			final TransferBuffer<SearchComb> buffer;
+			private final int from;
+			private final Scored[] old;
+			int score;
+			private final int to;
+
+			Expansion(final Scored[] old, final int from, final int to,
+					final int width, final int minScore, final int startScore) {
+				this.old = old;
+				this.from = from;
+				this.to = to;
+				best = new TreeSet<SearchComb>();
+				buffer = new TransferBuffer<SearchComb>(width, ties);
+				buffer.setMinScore(minScore);
+				score = startScore;
+			}
+
+			public Expansion call() {
+				score = expand(old, from, to, buffer, best, score);
+				return this;
+			}
+		}
+
+		private NavigableSet<SearchComb> best;
+
+		private int bestScore;
+
+		/**
+		 * maximum number of evaluated candidates
+		 */
+		private long budget;
+
+		/**
+		 * number of evaluated candidates
+		 */
+		private final AtomicLong candidates;
+
+		/**
+		 * workers extending the templates, null to search locally
+		 */
+		private BeamCoordinator coordinator;
+
+		/**
+		 * System.nanoTime() after which the search stops, if limited
+		 */
+		private long deadline;
+
+		private int deepth;
+
+		/**
+		 * number of children not generated because another template
+		 * generates the same combination
+		 */
+		private final AtomicLong duplicates;
+
+		/**
+		 * sources used to extend combinations, by descending gain
+		 */
+		private int[] expansion;
+
+		/**
+		 * expansionGain[i]: weight of all products of expansion[i], an upper
+		 * bound of its gain
+		 */
+		private int[] expansionGain;
+
+		/**
+		 * order of equally scored candidates by generation: earlier ones are
+		 * evicted first
+		 */
+		private final Comparator<SearchComb> generationOrder =
+				new Comparator<SearchComb>() {
+			public int compare(final SearchComb one, final SearchComb other) {
+				return (one.generation < other.generation) ? -1
+						: ((one.generation == other.generation) ? 0 : 1);
+			}
+		};
+
+		/**
+		 * source of the greedy lower bound, null if not used
+		 */
+		private GreedySearch greedy;
+
+		private boolean limited;
+
+		/**
+		 * largest number of sources, Integer.MAX_VALUE if unlimited
+		 */
+		private int maxDeepth;
+
+		/**
+		 * beam width per depth
+		 */
+		private BeamPolicy policy;
+
+		/**
+		 * children scoring less can't reach the target within maxDeepth
+		 */
+		private int pruneBelow;
+
+		/**
+		 * number of template sources not tried because their bound was
+		 * below the cutoff
+		 */
+		private final AtomicLong prunedSources;
+
+		/**
+		 * number of templates skipped because their bound was below the
+		 * cutoff
+		 */
+		private final AtomicLong prunedTemplates;
+
+		/**
+		 * seed of the random tie breaking, if ties is set
+		 */
+		private long randomSeed;
+
+		/**
+		 * reach[n]: most products n sources can add
+		 */
+		private int[] reach;
+
+		/**
+		 * expansion skips dominated sources
+		 */
+		private boolean reduced;
+
+		/**
+		 * beam statistics per depth
+		 */
+		private final List<BeamStatistics> statistics;
+
+		/**
+		 * why the last search stopped early, null if it didn't
+		 */
+		private volatile StopReason stopReason;
+
+		/**
+		 * number of products to reach, 0 if none
+		 */
+		private int target;
+
+		/**
+		 * fingerprint to index of the templates of the current depth
+		 */
+		private FingerprintIndex templates;
+
+		/**
+		 * templates of the current depth differing by a single source
+		 */
+		private SwapIndex swaps;
+
+		/**
+		 * number of threads used to extend combinations
+		 */
+		private int threads;
+
+		/**
+		 * order of equally scored candidates competing for the beam,
+		 * generationOrder unless random
+		 */
+		private Comparator<SearchComb> ties;
+
+		private TransferBuffer<SearchComb> transfer2;
+
+		public SearchState() {
+			deepth = 0;
+			threads = 1;
+			budget = Long.MAX_VALUE;
+			maxDeepth = Integer.MAX_VALUE;
+			pruneBelow = Integer.MIN_VALUE;
+			candidates = new AtomicLong();
+			duplicates = new AtomicLong();
+			prunedSources = new AtomicLong();
+			prunedTemplates = new AtomicLong();
+			policy = new BeamPolicy.Fixed();
+			statistics = new ArrayList<BeamStatistics>();
+			ties = generationOrder;
+
+			transfer2 = new TransferBuffer<SearchComb>(1);
+			best = new TreeSet<SearchComb>();
+			bestScore = 0;
+			reduced = true;
+			setExpansion(getExpansionSources(true));
+		}
+
+		/**
+		 * combinations with one source replaced by a source it dominates, if
+		 * they are at least as good as minScore
+		 */
+		private List<SearchComb> alternatives(final List<SearchComb> found,
+				final int minScore) {
+			final List<SearchComb> back = new ArrayList<SearchComb>();
+			if (expansion.length == sources.length) {
+				return back;
+			}
+
+			// dominating source -> all sources dominated by it
+			final int[] dominators = getDominators();
+			final List<List<Integer>> dominated = new ArrayList<List<Integer>>();
+			for (int si = 0; si < sources.length; si++) {
+				dominated.add(null);
+			}
+			for (int si = 0; si < sources.length; si++) {
+				int root = si;
+				while (-1 < dominators[root]) {
+					root = dominators[root];
+				}
+				if (root != si) {
+					List<Integer> list = dominated.get(root);
+					if (list == null) {
+						list = new ArrayList<Integer>();
+						dominated.set(root, list);
+					}
+					list.add(si);
+				}
+			}
+
+			final NavigableSet<SearchComb> known = new TreeSet<SearchComb>(
+					found);
+			final int limit = transfer2.getCapacity();
+			final int[][] missing = getMissingColumns();
+			final int words = Bits.words(columns.productCount());
+			final long[] once = new long[words];
+			final long[] twice = new long[words];
+			for (final SearchComb comb : found) {
+				boolean replaceable = false;
+				for (final int member : comb.ids) {
+					replaceable |= dominated.get(member) != null;
+				}
+				if (!replaceable) {
+					continue;
+				}
+				// products of more than one member stay covered
+				Arrays.fill(once, 0);
+				Arrays.fill(twice, 0);
+				for (final int member : comb.ids) {
+					columns.orTwice(member, once, twice);
+				}
+				final int slack = comb.score - minScore;
+				for (final int member : comb.ids) {
+					final List<Integer> list = dominated.get(member);
+					if (list == null) {
+						continue;
+					}
+					for (final int replacement : list) {
+						// the score drops by the products only member
+						// produces, except those replacement produces
+						if (!comb.contains(replacement)
+								&& uncovered(missing[replacement], twice,
+										slack) <= slack) {
+							final SearchComb alternative = new SearchComb();
+							for (final int si : comb.ids) {
+								if (si != member) {
+									alternative.set(si);
+								}
+							}
+							alternative.set(replacement);
+							if (known.add(alternative)) {
+								back.add(alternative);
+								if (limit <= back.size()) {
+									return back;
+								}
+							}
+						}
+					}
+				}
+			}
+			return back;
+		}
+
+		/**
+		 * optimum and near-optimum combinations, including alternatives
+		 * containing dominated sources
+		 */
+		public Combination[] closeCombinations() {
+			final Scored[] scored = transfer2.copy();
+			final List<SearchComb> found = new ArrayList<SearchComb>(
+					scored.length);
+			for (int index = scored.length - 1; -1 < index; index--) {
+				found.add((SearchComb) scored[index]);
+			}
+			if (0 < scored.length) {
+				final int minScore = scored[0].getScore();
+				found.addAll(alternatives(found, minScore));
+				Collections.sort(found, new Comparator<SearchComb>() {
+					public int compare(final SearchComb one,
+							final SearchComb other) {
+						return other.score - one.score;
+					}
+				});
+			}
+
+			final Combination[] back = new Combination[found.size()];
+			for (int index = 0; index < back.length; index++) {
+				back[index] = new Combination(CompiledCloud.this, found.get(
+						index).toSources());
+			}
+			return back;
+		}
+
+		/**
+		 *optimum combinations
+		 */
+		public Combination[] combinations() {
+			final Combination[] back = new Combination[best.size()];
+			int backIndex = 0;
+			for (SearchComb b : best) {
+				back[backIndex++] = new Combination(CompiledCloud.this, b
+						.toSources());
+			}
+			return back;
+		}
+
+		/**
+		 * children scoring less are neither retained by buffer nor optimum
+		 */
+		private int cutoff(final TransferBuffer<SearchComb> buffer,
+				final int top) {
+			return Math.min(top, Math.max(buffer.getAcceptScore(), pruneBelow));
+		}
+
+		/**
+		 * number of optimum combinations
+		 */
+		public int getBestSize() {
+			return best.size();
+		}
+
+		/**
+		 * number of optimum and near-optimum combinations
+		 */
+		public int getCandidateSize() {
+			return transfer2.size();
+		}
+
+		/**
+		 * number of sources
+		 */
+		public int getDeepth() {
+			return deepth;
+		}
+
+		/**
+		 * beam width and statistics of each finished depth
+		 */
+		public List<BeamStatistics> getBeamStatistics() {
+			return Collections.unmodifiableList(new ArrayList<BeamStatistics>(
+					statistics));
+		}
+
+		/**
+		 * estimated number of bytes used by the retained candidates
+		 */
+		public long getBeamMemory() {
+			return transfer2.size() * getCandidateBytes(deepth);
+		}
+
+		/**
+		 * number of candidates evaluated so far
+		 */
+		public long getCandidateCount() {
+			return candidates.get();
+		}
+
+		/**
+		 * number of children skipped because another template generates the
+		 * same combination
+		 */
+		public long getDuplicateCount() {
+			return duplicates.get();
+		}
+
+		/**
+		 * number of sources used to extend combinations
+		 */
+		public int getExpansionSize() {
+			return expansion.length;
+		}
+
+		/**
+		 * why the last search stopped before finishing its depth; null if it
+		 * didn't
+		 */
+		public StopReason getStopReason() {
+			return stopReason;
+		}
+
+		/**
+		 * find new combinations by adding a single source to old optimum and
+		 * near-optimum combinations; if the search is interrupted, runs out
+		 * of time or exceeds the candidate budget the results of the last
+		 * finished depth are kept and false is returned
+		 */
+		public boolean search() {
+			if (isTargetReached() || maxDeepth <= deepth) {
+				return false;
+			}
+
+			final Scored[] old;
+			if (deepth == 0) {
+				old = new SearchComb[] { new SearchComb() };
+			} else {
+				old = transfer2.copy();
+			}
+
+			stopReason = null;
+			final int width = policy.getWidth(CompiledCloud.this, statistics
+					.isEmpty() ? null : statistics.get(statistics.size() - 1));
+			if (width < 1) {
+				throw new IllegalStateException("bad beam width: " + width);
+			}
+			final int minScore = bestScore + 1;
+			final TransferBuffer<SearchComb> next = new TransferBuffer<SearchComb>(
+					width, ties);
+			next.setMinScore(minScore);
+			final NavigableSet<SearchComb> found = new TreeSet<SearchComb>();
+			templates = new FingerprintIndex(old.length);
+			for (int index = 0; index < old.length; index++) {
+				templates.put(((SearchComb) old[index]).fingerprint, index);
+			}
+			swaps = new SwapIndex(old, sourceKeys);
+			int startScore = minScore;
+			final SearchComb seed = greedySeed();
+			if (seed != null && minScore <= seed.score) {
+				seed.generation = generation(old, seed);
+				next.add(seed);
+				found.add(seed);
+				startScore = seed.score;
+			}
+			final long prunedSourcesBefore = prunedSources.get();
+			final long prunedTemplatesBefore = prunedTemplates.get();
+			pruneBelow = pruneScore(deepth + 1);
+
+			final int workers = Math.min(threads, old.length);
+			final int score;
+			if (coordinator != null) {
+				score = expandRemote(old, width, next, found, minScore,
+						startScore);
+			} else if (workers < 2) {
+				score = expand(old, 0, old.length, next, found, startScore);
+			} else {
+				score = expandParallel(old, workers, width, next, found,
+						minScore, startScore);
+			}
+			if (stopReason != null) {
+				return false;
+			}
+
+			// the depth is complete
+			transfer2 = next;
+			best = found;
+			bestScore = score;
+			deepth++;
+			statistics.add(new BeamStatistics(deepth, width, next.getOffered(),
+					next.getAccepted(), next.getEvicted(), next.size(),
+					next.getContenders(),
+					(int) (prunedTemplates.get() - prunedTemplatesBefore),
+					(int) (prunedSources.get() - prunedSourcesBefore)));
+
+			return !best.isEmpty();
+		}
+
+		/**
+		 * extend the templates old[from] .. old[to - 1] by a single source;
+		 * sources are tried by descending gain, so once the template score
+		 * plus the gain bound of a source is below the cutoff none of the
+		 * remaining sources can produce a retained child
+		 * @param startScore lowest score of an optimum combination
+		 * @return score of the combinations in found
+		 */
+		int expand(final Scored[] old, final int from, final int to,
+				final TransferBuffer<SearchComb> buffer,
+				final NavigableSet<SearchComb> found, final int startScore) {
+			int top = startScore;
+			int skippedTemplates = 0;
+			long skippedSources = 0;
+			// sources of the current template
+			final boolean[] contained = new boolean[sources.length];
+			// earliest generation of children by other templates
+			final long[] earliest = new long[sources.length];
+			Arrays.fill(earliest, Long.MAX_VALUE);
+			for (int index = from; index < to; index++) {
+				if (stopRequested()) {
+					break;
+				}
+				// pick an old combination
+				final SearchComb template = (SearchComb) old[index];
+				if (template != null && 0 < expansion.length
+						&& template.score + expansionGain[0] < cutoff(buffer, top)) {
+					skippedTemplates++;
+					skippedSources += expansion.length;
+				} else if (template != null) {
+					for (final int si : template.ids) {
+						contained[si] = true;
+					}
+					final int last = template.last();
+					boolean collected = false;
+					int children = 0;
+					int skipped = 0;
+					// find sources not yet contained in the template
+					for (int i = 0; i < expansion.length; i++) {
+						if (template.score + expansionGain[i] < cutoff(buffer,
+								top)) {
+							skippedSources += expansion.length - i;
+							break;
+						}
+						final int si = expansion[i];
+						if (!contained[si]) {
+							if (generatedElsewhere(old, template, last, si)) {
+								skipped++;
+								continue;
+							}
+							children++;
+							// old template does't contain the si source;
+							// score it without creating the combination
+							final int gain = columns.gain(si, template.prods,
+									columnWeights);
+							final int score = template.score + gain;
+							// don't filter by the optimum score here: near-optimum solutions could be missed
+							final boolean keep = pruneBelow <= score
+									&& buffer.accepts(score);
+							// independent of the buffer: same result for any thread count
+							final boolean optimum = 0 < gain && top <= score;
+							if (keep || optimum) {
+								final SearchComb test = new SearchComb(template);
+								test.set(si);
+								if (keep) {
+									if (!collected) {
+										swaps.collect(index, earliest,
+												sources.length);
+										collected = true;
+									}
+									test.generation = Math.min((long) index
+											* sources.length + si,
+											earliest[si]);
+									buffer.insert(test);
+								}
+								if (optimum) {
+									// test is an optimum solution
+									if (top < score) {
+										// test is THE new optimum solution
+										found.clear();
+										top = score;
+									}
+									found.add(test);
+								}
+							}
+						}
+					}
+					candidates.addAndGet(children);
+					duplicates.addAndGet(skipped);
+					for (final int si : template.ids) {
+						contained[si] = false;
+					}
+					if (collected) {
+						swaps.reset(index, earliest);
+					}
+				}
+			}
+			prunedTemplates.addAndGet(skippedTemplates);
+			prunedSources.addAndGet(skippedSources);
+			return top;
+		}
+
+		/**
+		 * extend the templates on several threads and merge the results
+		 * @return score of the combinations in found
+		 */
+		private int expandParallel(final Scored[] old, final int workers,
+				final int width, final TransferBuffer<SearchComb> buffer,
+				final NavigableSet<SearchComb> found, final int minScore,
+				final int startScore) {
+			int top = startScore;
+			final ExecutorService executor = Executors
+					.newFixedThreadPool(workers);
+			try {
+				final List<Future<Expansion>> futures = new ArrayList<Future<Expansion>>();
+				for (int worker = 0; worker < workers; worker++) {
+					futures.add(executor.submit(new Expansion(old, old.length
+							* worker / workers, old.length * (worker + 1)
+							/ workers, width, minScore, startScore)));
+				}
+				for (final Future<Expansion> future : futures) {
+					final Expansion expansion = future.get();
+					buffer.merge(expansion.buffer);
+					if (top < expansion.score) {
+						found.clear();
+						top = expansion.score;
+					}
+					if (top == expansion.score) {
+						found.addAll(expansion.best);
+					}
+				}
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				stop(StopReason.INTERRUPTED);
+			} catch (final ExecutionException e) {
+				throw new IllegalStateException("search failed", e.getCause());
+			} finally {
+				executor.shutdownNow();
+				awaitTermination(executor);
+			}
+			return top;
+		}
+
+		/**
+		 * extend the templates on the workers of the coordinator and merge
+		 * their results; slices no worker finished are extended here
+		 * @return score of the combinations in found
+		 */
+		private int expandRemote(final Scored[] old, final int width,
+				final TransferBuffer<SearchComb> buffer,
+				final NavigableSet<SearchComb> found, final int minScore,
+				final int startScore) {
+			final int[][] ids = new int[old.length][];
+			for (int index = 0; index < old.length; index++) {
+				ids[index] = ((SearchComb) old[index]).ids;
+			}
+			final List<BeamProtocol.Slice> slices;
+			try {
+				slices = coordinator.expand(new BeamProtocol.Request(reduced,
+						ties != generationOrder, randomSeed, width, minScore,
+						startScore, pruneBelow, ids));
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				stop(StopReason.INTERRUPTED);
+				return startScore;
+			}
+			Collections.sort(slices, new Comparator<BeamProtocol.Slice>() {
+				public int compare(final BeamProtocol.Slice one,
+						final BeamProtocol.Slice other) {
+					return one.from - other.from;
+				}
+			});
+
+			int top = startScore;
+			int from = 0;
+			for (final BeamProtocol.Slice slice : slices) {
+				if (from < slice.from) {
+					top = expand(old, from, slice.from, buffer, found, top);
+				}
+				final SearchComb[] kept = new SearchComb[slice.kept.length];
+				for (int index = 0; index < kept.length; index++) {
+					kept[index] = toComb(slice.kept[index]);
+					kept[index].generation = generation(old, kept[index]);
+				}
+				buffer.merge(kept, slice.offered, slice.accepted,
+						slice.evicted, slice.counts);
+				if (top < slice.score) {
+					found.clear();
+					top = slice.score;
+				}
+				if (top == slice.score) {
+					for (final int[] optimum : slice.best) {
+						found.add(toComb(optimum));
+					}
+				}
+				candidates.addAndGet(slice.candidates);
+				duplicates.addAndGet(slice.duplicates);
+				prunedTemplates.addAndGet(slice.prunedTemplates);
+				prunedSources.addAndGet(slice.prunedSources);
+				from = slice.to;
+			}
+			if (from < old.length) {
+				top = expand(old, from, old.length, buffer, found, top);
+			}
+			// workers don't know the budget
+			stopRequested();
+			return top;
+		}
+
+		/**
+		 * extend the templates from .. to - 1 of a depth searched by a
+		 * BeamCoordinator; used by BeamWorker
+		 */
+		BeamProtocol.Slice expandSlice(final BeamProtocol.Request request,
+				final int from, final int to) {
+			if (reduced != request.reduce) {
+				reduced = request.reduce;
+				setExpansion(getExpansionSources(reduced));
+			}
+			if (request.random) {
+				setRandomSeed(request.randomSeed);
+			} else {
+				ties = generationOrder;
+			}
+			pruneBelow = request.pruneBelow;
+			final Scored[] old = new Scored[request.templates.length];
+			templates = new FingerprintIndex(old.length);
+			for (int index = 0; index < old.length; index++) {
+				final SearchComb template = toComb(request.templates[index]);
+				old[index] = template;
+				templates.put(template.fingerprint, index);
+			}
+			swaps = new SwapIndex(old, sourceKeys);
+
+			final long candidatesBefore = candidates.get();
+			final long duplicatesBefore = duplicates.get();
+			final long prunedSourcesBefore = prunedSources.get();
+			final long prunedTemplatesBefore = prunedTemplates.get();
+			final Expansion expansion = new Expansion(old, from, to,
+					request.width, request.minScore, request.startScore)
+					.call();
+
+			final BeamProtocol.Slice slice = new BeamProtocol.Slice(from, to);
+			slice.score = expansion.score;
+			slice.best = new int[expansion.best.size()][];
+			int index = 0;
+			for (final SearchComb optimum : expansion.best) {
+				slice.best[index++] = optimum.ids;
+			}
+			final Scored[] kept = expansion.buffer.copy();
+			slice.kept = new int[kept.length][];
+			for (index = 0; index < kept.length; index++) {
+				slice.kept[index] = ((SearchComb) kept[index]).ids;
+			}
+			slice.offered = expansion.buffer.getOffered();
+			slice.accepted = expansion.buffer.getAccepted();
+			slice.evicted = expansion.buffer.getEvicted();
+			slice.counts = expansion.buffer.getCounts();
+			slice.candidates = candidates.get() - candidatesBefore;
+			slice.duplicates = duplicates.get() - duplicatesBefore;
+			slice.prunedSources = prunedSources.get() - prunedSourcesBefore;
+			slice.prunedTemplates = prunedTemplates.get()
+					- prunedTemplatesBefore;
+			return slice;
+		}
+
+		/**
+		 * break ties between equally scored candidates competing for the
+		 * beam at random instead of by generation order; the same seed gives
+		 * the same results for any thread count
+		 */
+		public void setRandomSeed(final long seed) {
+			randomSeed = seed;
+			final long salt = mix(seed);
+			ties = new Comparator<SearchComb>() {
+				public int compare(final SearchComb one, final SearchComb other) {
+					final long oneKey = mix(one.fingerprint ^ salt);
+					final long otherKey = mix(other.fingerprint ^ salt);
+					if (oneKey != otherKey) {
+						return (oneKey < otherKey) ? -1 : 1;
+					}
+					return generationOrder.compare(one, other);
+				}
+			};
+		}
+
+		/**
+		 * extend the templates on the workers of the given coordinator
+		 * instead of local threads, null to search locally; the results
+		 * don't depend on it
+		 */
+		public void setCoordinator(final BeamCoordinator beamCoordinator) {
+			if (beamCoordinator != null
+					&& beamCoordinator.getCloud() != CompiledCloud.this) {
+				throw new IllegalArgumentException(
+						"coordinator of another cloud");
+			}
+			coordinator = beamCoordinator;
+		}
+
+		/**
+		 * policy deciding the beam width of the following depths; fixed to
+		 * calculateBufferCapacity() by default
+		 */
+		public void setBeamPolicy(final BeamPolicy beamPolicy) {
+			if (beamPolicy == null) {
+				throw new IllegalArgumentException("no beam policy");
+			}
+			policy = beamPolicy;
+		}
+
+		/**
+		 * maximum number of candidates evaluated by all searches; a depth
+		 * exceeding it is discarded
+		 */
+		public void setCandidateBudget(final long maxCandidates) {
+			if (maxCandidates < 0) {
+				throw new IllegalArgumentException("bad budget: "
+						+ maxCandidates);
+			}
+			budget = maxCandidates;
+		}
+
+		/**
+		 * stop searching the given number of milliseconds after this call; a
+		 * depth not finished by then is discarded
+		 */
+		public void setDeadline(final long timeoutMillis) {
+			if (timeoutMillis < 0) {
+				throw new IllegalArgumentException("bad timeout: "
+						+ timeoutMillis);
+			}
+			deadline = System.nanoTime() + timeoutMillis * 1000000;
+			limited = true;
+		}
+
+		/**
+		 * check if template + sourceIndex is generated by its canonical
+		 * parent: the combination without its highest source index. Children
+		 * without a canonical parent among the templates are generated by
+		 * all of their parents.
+		 * @param last highest source index of template
+		 */
+		private boolean generatedElsewhere(final Scored[] old,
+				final SearchComb template, final int last,
+				final int sourceIndex) {
+			if (last < sourceIndex) {
+				// template is the canonical parent
+				return false;
+			}
+			final int other = templates.get(template.fingerprint
+					^ sourceKeys[sourceIndex] ^ sourceKeys[last]);
+			if (other < 0) {
+				return false;
+			}
+			final SearchComb parent = (SearchComb) old[other];
+			return parent.contains(sourceIndex) && !parent.contains(last);
+		}
+
+		/**
+		 * position of comb in generation order: the templates are extended
+		 * one after another, each by the sources in ascending order, and a
+		 * combination counts as generated by its first parent. The position
+		 * is the index of that template times the number of sources plus the
+		 * added source, -1 if there is no parent.
+		 */
+		private long generation(final Scored[] old, final SearchComb comb) {
+			long first = -1;
+			for (final int si : comb.ids) {
+				final int index = templates.get(comb.fingerprint
+						^ sourceKeys[si]);
+				if (index < 0) {
+					continue;
+				}
+				final long key = (long) index * sources.length + si;
+				final SearchComb parent = (SearchComb) old[index];
+				if ((first < 0 || key < first)
+						&& parent.ids.length + 1 == comb.ids.length
+						&& !parent.contains(si)) {
+					first = key;
+				}
+			}
+			return first;
+		}
+
+		/**
+		 * greedy combination of one source more than the last finished
+		 * depth, null if not used or there is none
+		 */
+		private SearchComb greedySeed() {
+			if (greedy == null) {
+				return null;
+			}
+			while (greedy.getDeepth() <= deepth && greedy.search()) {
+				// catch up with the beam
+			}
+			if (greedy.getDeepth() != deepth + 1) {
+				return null;
+			}
+			final SearchComb seed = new SearchComb();
+			for (int si = 0; si < sources.length; si++) {
+				if (greedy.isChosen(si)) {
+					seed.set(si);
+				}
+			}
+			return seed;
 		}
 
-		SearchComb(final SearchComb master) {
-			subs = master.subs.clone();
-			prods = master.prods.clone();
+		/**
+		 * check if the last finished depth reached the target
+		 */
+		public boolean isTargetReached() {
+			return 0 < target && target <= bestScore && 0 < deepth;
 		}
 
-		public int compareTo(final SearchComb other) {
-			if (other == null) {
-				return -1;
+		/**
+		 * lowest score of a combination of the given number of sources that
+		 * can still reach the target within maxDeepth sources
+		 */
+		private int pruneScore(final int sourceCount) {
+			if (target == 0 || maxDeepth == Integer.MAX_VALUE) {
+				return Integer.MIN_VALUE;
 			}
-
-			for (int i = 0; i < subs.length; i++) {
-				if (subs[i] ^ other.subs[i]) {
-					return subs[i] ? 1 : -1;
+			if (reach == null) {
+				reach = new int[expansionGain.length + 1];
+				for (int n = 1; n < reach.length; n++) {
+					reach[n] = reach[n - 1] + expansionGain[n - 1];
 				}
 			}
-			return 0;
+			final int rest = Math.min(maxDeepth - sourceCount,
+					reach.length - 1);
+			return target - reach[Math.max(0, rest)];
 		}
 
-		@Override
-		public boolean equals(final Object other) {
-			if (other instanceof SearchComb) {
-				return 0 == compareTo((SearchComb) other);
+		/**
+		 * largest number of sources to search; candidates that can't reach
+		 * the target within it aren't retained
+		 */
+		public void setMaxDeepth(final int sources) {
+			if (sources < 1) {
+				throw new IllegalArgumentException("bad depth: " + sources);
 			}
-			return false;
+			maxDeepth = sources;
 		}
 
 		/**
-		 * number of products
+		 * skip sources dominated by other sources when extending
+		 * combinations; enabled by default, must be called before the first
+		 * search
 		 */
-		public int getScore() {
-			return score;
+		public void setReduceDominated(final boolean reduce) {
+			if (deepth != 0) {
+				throw new IllegalStateException("search already started");
+			}
+			reduced = reduce;
+			setExpansion(getExpansionSources(reduce));
 		}
 
 		/**
-		 * add the given source and it's products
-		 * @return number of total products if new products have been encountered
+		 * use the sources ordered by descending gain, then ascending index
 		 */
-		protected int set(final int sourceIndex) {
-			boolean changed = false;
-			int count = 0;
-			subs[sourceIndex] = true;
-			for (int pi = 0; pi < prods.length; pi++) {
-				if (data[sourceIndex][pi] && !prods[pi]) {
-					prods[pi] = true;
-					changed = true;
-				}
-				if (prods[pi]) {
-					count++;
-				}
+		private void setExpansion(final int[] sourceIndices) {
+			final long[] empty = new long[Bits.words(columns.productCount())];
+			final long[] keys = new long[sourceIndices.length];
+			for (int i = 0; i < keys.length; i++) {
+				final int gain = columns.gain(sourceIndices[i], empty,
+						columnWeights);
+				keys[i] = ((long) (Integer.MAX_VALUE - gain) << 32)
+						| sourceIndices[i];
 			}
-			score = count;
-			return (changed ? count : 0);
+			Arrays.sort(keys);
+			expansion = new int[keys.length];
+			expansionGain = new int[keys.length];
+			for (int i = 0; i < keys.length; i++) {
+				expansion[i] = (int) keys[i];
+				expansionGain[i] = Integer.MAX_VALUE - (int) (keys[i] >>> 32);
+			}
+			reach = null;
 		}
-	}
-	
-	/**
-	 * calculate the maximum number of combinations retained between search rounds
-	 */
-	public int calculateBufferCapacity(){
-		final int s = getSourceCount();
-		return (int) (s * Math.log(s + Math.E));
-	}
-
-	/**
-	 * store current search state
-	 */
-	public class SearchState {
-		private final NavigableSet<SearchComb> best;
 
-		private int bestScore;
-		private int deepth;
-
-		private final TransferBuffer<SearchComb> transfer2;
-
-		public SearchState() {
-			deepth = 0;
-			
-			final int capacity = calculateBufferCapacity();
-
-			transfer2 = new TransferBuffer<SearchComb>(capacity);
-			best = new TreeSet<SearchComb>();
-			bestScore = 0;
-		}
-		
 		/**
-		 * optimum and near-optimum combinations
+		 * seed each depth with the greedy combination of the same number of
+		 * sources: the optimum found is never worse than the greedy one and
+		 * its score raises the pruning cutoff early; disabled by default,
+		 * must be called before the first search
 		 */
-		public Combination[] closeCombinations() {
-			Scored[] scored = transfer2.copy();
-			final Combination[] back = new Combination[scored.length];
-			int backIndex = back.length - 1;
-			for (int index = 0; index < back.length; index++) {
-				SearchComb b = (SearchComb) scored[index];
-				back[backIndex--] = new Combination(CompiledCloud.this, b.subs);
+		public void setGreedySeed(final boolean seed) {
+			if (deepth != 0) {
+				throw new IllegalStateException("search already started");
 			}
-			return back;
+			greedy = seed ? new GreedySearch(CompiledCloud.this) : null;
 		}
 
 		/**
-		 *optimum combinations
+		 * stop after the first depth producing at least the given number of
+		 * products; 0 for no target
 		 */
-		public Combination[] combinations() {
-			final Combination[] back = new Combination[best.size()];
-			int backIndex = 0;
-			for (SearchComb b : best) {
-				back[backIndex++] = new Combination(CompiledCloud.this, b.subs);
+		public void setTarget(final int products) {
+			if (products < 0 || getProductCount() < products) {
+				throw new IllegalArgumentException("bad target: " + products);
 			}
-			return back;
+			target = products;
 		}
 
 		/**
-		 * number of optimum combinations
+		 * stop after the first depth producing at least the given fraction
+		 * of all products
 		 */
-		public int getBestSize() {
-			return best.size();
+		public void setTargetFraction(final double fraction) {
+			if (!(0 < fraction && fraction <= 1)) {
+				throw new IllegalArgumentException("bad fraction: " + fraction);
+			}
+			setTarget((int) Math.ceil(fraction * getProductCount()));
 		}
 
 		/**
-		 * number of optimum and near-optimum combinations
+		 * number of threads used to extend combinations, 1 by default; the
+		 * results don't depend on it
 		 */
-		public int getCandidateSize() {
-			return transfer2.size();
+		public void setThreads(final int count) {
+			if (count < 1) {
+				throw new IllegalArgumentException("bad thread count: "
+						+ count);
+			}
+			threads = count;
 		}
 
 		/**
-		 * number of sources
+		 * the combination of the given ascending source indices
 		 */
-		public int getDeepth() {
-			return deepth;
+		private SearchComb toComb(final int[] ids) {
+			final SearchComb comb = new SearchComb();
+			for (final int si : ids) {
+				comb.set(si);
+			}
+			return comb;
 		}
 
 		/**
-		 * find new combinations by adding a single source to old optimum and near-optimum combinations
+		 * record the first reason to stop
 		 */
-		public boolean search() {
-			final Scored[] old;
-			if (deepth == 0) {
-				old = new SearchComb[] { new SearchComb() };
-			} else {
-				old = transfer2.copy();
+		private synchronized void stop(final StopReason reason) {
+			if (stopReason == null) {
+				stopReason = reason;
 			}
+		}
 
-			best.clear();
-			deepth++;
-			bestScore++;
-
-			transfer2.setMinScore(bestScore);
-
-			for (final Scored rawTemplate : old) {
-				// pick an old combination
-				final SearchComb template = (SearchComb) rawTemplate;
-				if (template != null) {
-					// find sources not yet contained in the template
-					for (int si = 0; si < sources.length; si++) {
-						if (!template.subs[si]) {
-							// old template does't contain the si source
-							final SearchComb test = new SearchComb(template);
-							final int score = test.set(si);
-							// don't filter by score here: near-optimum solutions could be missed
-							if (transfer2.add(test)) {
-								// test is at least a near-optimum solution
-								if (bestScore <= score) {
-									// test is an optimum solution
-									if (bestScore < score) {
-										// test is THE new optimum solution
-										best.clear();
-										bestScore = score;
-									}
-									best.add(test);
-								}
-							}
-						}
-					}
+		/**
+		 * check for interruption, deadline and budget
+		 */
+		private boolean stopRequested() {
+			if (stopReason == null) {
+				if (Thread.currentThread().isInterrupted()) {
+					stop(StopReason.INTERRUPTED);
+				} else if (limited && deadline - System.nanoTime() < 0) {
+					stop(StopReason.DEADLINE);
+				} else if (budget < candidates.get()) {
+					stop(StopReason.BUDGET);
 				}
 			}
-
-			return !best.isEmpty();
+			return stopReason != null;
 		}
 	}
 
-	final boolean[][] data;
+	/**
+	 * reason for a search to stop before finishing a depth
+	 */
+	public enum StopReason {
+		/** candidate budget exceeded */
+		BUDGET,
+		/** deadline passed */
+		DEADLINE,
+		/** thread interrupted */
+		INTERRUPTED
+	}
+
+	/**
+	 * Source-Column matrix used by the search; a column groups all products
+	 * produced by the same sources
+	 */
+	final Coverage columns;
+
+	/**
+	 * number of products per column, null if each column is a single product
+	 */
+	final int[] columnWeights;
+
+	/**
+	 * Source-Product matrix
+	 */
+	final Coverage coverage;
+
+	/**
+	 * for each source: index of a source producing all of its products, -1
+	 * if there is none; lazily initialized
+	 */
+	private int[] dominators;
+
+	/**
+	 * see getMissingColumns(); lazily initialized
+	 */
+	private int[][] missingColumns;
+
+	/**
+	 * product-major index: the producers of product pi are
+	 * producerIndex[producerStart[pi]] .. producerIndex[producerStart[pi + 1] - 1]
+	 */
+	final int[] producerIndex;
+	final int[] producerStart;
+
+	/**
+	 * name to index maps
+	 */
+	private final Map<String, Integer> productNames;
 	final Product[] products;
 
+	/**
+	 * random Zobrist key per source
+	 */
+	private final long[] sourceKeys;
+
+	private final Map<String, Integer> sourceNames;
 	final Source[] sources;
 
-	final float[][] valueData;
+	/**
+	 * wait for the tasks of a shut down executor; they may still read
+	 * off-heap data that close frees
+	 */
+	static void awaitTermination(final ExecutorService executor) {
+		boolean interrupted = false;
+		while (!executor.isTerminated()) {
+			try {
+				executor.awaitTermination(1, TimeUnit.MINUTES);
+			} catch (final InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * scramble the bits of a key: 64 bit finalizer of MurmurHash3
+	 */
+	private static long mix(final long key) {
+		long h = key;
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/**
+	 * map names to array indices
+	 */
+	private static Map<String, Integer> index(final Named[] named) {
+		final Map<String, Integer> back = new HashMap<String, Integer>(
+				named.length * 2);
+		for (int i = 0; i < named.length; i++) {
+			back.put(named[i].getName(), i);
+		}
+		return back;
+	}
 
 	CompiledCloud(final Source[] _sources, final Product[] _products,
-			final boolean[][] produces, final float[][] amounts) {
+			final Coverage produces) {
 		if (_sources == null || _sources.length < 1) {
 			throw new IllegalArgumentException("no sources");
 		}
@@ -250,24 +1386,92 @@ public class CompiledCloud {
 			throw new IllegalArgumentException("no data");
 		}
 
-		if (produces.length != _sources.length) {
-			throw new IllegalArgumentException("data has " + produces.length
-					+ " sources, expected " + _sources.length);
+		if (produces.sourceCount() != _sources.length) {
+			throw new IllegalArgumentException("data has "
+					+ produces.sourceCount() + " sources, expected "
+					+ _sources.length);
+		}
+		if (produces.productCount() != _products.length) {
+			throw new IllegalArgumentException("data has "
+					+ produces.productCount() + " products, expected "
+					+ _products.length);
+		}
+		coverage = produces;
+
+		sourceNames = index(sources);
+		sourceKeys = new long[sources.length];
+		final Random random = new Random(SOURCE_KEY_SEED);
+		for (int si = 0; si < sources.length; si++) {
+			sourceKeys[si] = random.nextLong();
+		}
+		productNames = index(products);
+
+		producerStart = new int[products.length + 1];
+		for (int si = 0; si < sources.length; si++) {
+			for (final int pi : coverage.products(si)) {
+				producerStart[pi + 1]++;
+			}
+		}
+		for (int pi = 0; pi < products.length; pi++) {
+			producerStart[pi + 1] += producerStart[pi];
+		}
+		producerIndex = new int[producerStart[products.length]];
+		final int[] fill = new int[products.length];
+		for (int si = 0; si < sources.length; si++) {
+			for (final int pi : coverage.products(si)) {
+				producerIndex[producerStart[pi] + fill[pi]++] = si;
+			}
+		}
+
+		// group products produced by the same sources
+		final Map<Producers, Integer> classes = new HashMap<Producers, Integer>();
+		final int[] productColumn = new int[products.length];
+		for (int pi = 0; pi < products.length; pi++) {
+			final Producers key = new Producers(pi);
+			Integer column = classes.get(key);
+			if (column == null) {
+				column = classes.size();
+				classes.put(key, column);
+			}
+			productColumn[pi] = column;
 		}
-		for (int sourceIndex = 0; sourceIndex < sources.length; sourceIndex++) {
-			final boolean[] entry = produces[sourceIndex];
-			if (entry == null) {
-				throw new IllegalArgumentException("no data for source ("
-						+ sourceIndex + ") " + sources[sourceIndex]);
+		if (classes.size() <= products.length * MAX_COLUMN_FRACTION) {
+			columnWeights = new int[classes.size()];
+			for (int pi = 0; pi < products.length; pi++) {
+				columnWeights[productColumn[pi]]++;
 			}
-			if (entry.length != products.length) {
-				throw new IllegalArgumentException("data has " + entry.length
-						+ " instead of " + products.length + " for source ("
-						+ sourceIndex + ") " + sources[sourceIndex]);
+			final int[][] produced = new int[sources.length][];
+			for (int si = 0; si < sources.length; si++) {
+				final int[] row = coverage.products(si);
+				final int[] columnRow = new int[row.length];
+				for (int i = 0; i < row.length; i++) {
+					columnRow[i] = productColumn[row[i]];
+				}
+				Arrays.sort(columnRow);
+				int length = 0;
+				for (int i = 0; i < columnRow.length; i++) {
+					if (length == 0 || columnRow[length - 1] != columnRow[i]) {
+						columnRow[length++] = columnRow[i];
+					}
+				}
+				produced[si] = Arrays.copyOf(columnRow, length);
 			}
+			columns = coverage.create(classes.size(), produced);
+		} else {
+			columnWeights = null;
+			columns = coverage;
+		}
+	}
+
+	/**
+	 * release the compiled data, required for off-heap clouds; this cloud
+	 * can't be used afterwards
+	 */
+	public void close() {
+		if (columns != coverage) {
+			columns.close();
 		}
-		data = produces;
-		valueData = amounts;
+		coverage.close();
 	}
 
 	/**
@@ -285,12 +1489,177 @@ public class CompiledCloud {
 			writer.append(products[pi].getName());
 			for (int si = 0; si < sources.length; si++) {
 				writer.append('\t');
-				writer.append(data[si][pi] ? '1' : '0');
+				writer.append(produces(si, pi) ? '1' : '0');
 			}
 			writer.append("\r\n");
 		}
 	}
 
+	/**
+	 * estimated number of bytes used by a single search candidate of the
+	 * given number of sources
+	 */
+	public long getCandidateBytes(final int sourceCount) {
+		final int words = Bits.words(columns.productCount());
+		// objects, source indices, product bits and beam entries
+		return 112L + 4L * sourceCount + 8L * words;
+	}
+
+	/**
+	 * number of sources producing only products of another source
+	 */
+	public int getDominatedCount() {
+		int count = 0;
+		for (final int dominator : getDominators()) {
+			if (-1 < dominator) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * find a dominating source for each source; of sources producing the
+	 * same products the one with the lowest index dominates the others
+	 */
+	synchronized int[] getDominators() {
+		if (dominators == null) {
+			final int[] degrees = new int[sources.length];
+			int widest = 0;
+			for (int si = 0; si < sources.length; si++) {
+				degrees[si] = coverage.degree(si);
+				if (degrees[widest] < degrees[si]) {
+					widest = si;
+				}
+			}
+
+			final int[] back = new int[sources.length];
+			for (int si = 0; si < sources.length; si++) {
+				back[si] = -1;
+				if (degrees[si] == 0) {
+					if (widest != si) {
+						back[si] = widest;
+					}
+					continue;
+				}
+
+				// every dominator has to produce the least produced product
+				int rarest = -1;
+				for (final int pi : coverage.products(si)) {
+					if (rarest < 0
+							|| getProducerCount(pi) < getProducerCount(rarest)) {
+						rarest = pi;
+					}
+				}
+				final int end = producerStart[rarest + 1];
+				for (int i = producerStart[rarest]; i < end; i++) {
+					final int other = producerIndex[i];
+					if (other != si
+							&& (degrees[si] < degrees[other] || (degrees[si] == degrees[other] && other < si))
+							&& coverage.subset(si, other)) {
+						back[si] = other;
+						break;
+					}
+				}
+			}
+			dominators = back;
+		}
+		return dominators;
+	}
+
+	/**
+	 * sources used to extend search combinations
+	 * @param reduce skip dominated sources
+	 */
+	int[] getExpansionSources(final boolean reduce) {
+		final int[] dominated = reduce ? getDominators() : null;
+		int count = 0;
+		final int[] back = new int[sources.length];
+		for (int si = 0; si < sources.length; si++) {
+			if (dominated == null || dominated[si] < 0) {
+				back[count++] = si;
+			}
+		}
+		return Arrays.copyOf(back, count);
+	}
+
+	/**
+	 * estimated number of bytes used by the compiled data
+	 */
+	public long getMemoryUsage() {
+		long bytes = coverage.memory();
+		if (columns != coverage) {
+			bytes += columns.memory();
+			bytes += 4L * columnWeights.length;
+		}
+		bytes += 4L * producerStart.length;
+		bytes += 4L * producerIndex.length;
+		return bytes;
+	}
+
+	/**
+	 * for each dominated source: the ascending columns produced by the first
+	 * source of its chain of dominators but not by itself, null for other
+	 * sources
+	 */
+	synchronized int[][] getMissingColumns() {
+		if (missingColumns == null) {
+			final int[] dominating = getDominators();
+			final int[][] back = new int[sources.length][];
+			for (int si = 0; si < sources.length; si++) {
+				int root = si;
+				while (-1 < dominating[root]) {
+					root = dominating[root];
+				}
+				if (root != si) {
+					final int[] all = columns.products(root);
+					final int[] own = columns.products(si);
+					final int[] rest = new int[all.length - own.length];
+					int count = 0;
+					int ownIndex = 0;
+					for (final int column : all) {
+						if (ownIndex < own.length && own[ownIndex] == column) {
+							ownIndex++;
+						} else {
+							rest[count++] = column;
+						}
+					}
+					back[si] = rest;
+				}
+			}
+			missingColumns = back;
+		}
+		return missingColumns;
+	}
+
+	/**
+	 * number of products produced by at least one source: the largest
+	 * possible score
+	 */
+	public int getProducedCount() {
+		int count = 0;
+		for (int pi = 0; pi < products.length; pi++) {
+			if (producerStart[pi] < producerStart[pi + 1]) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * map product index and producer number to source index
+	 */
+	public int getProducer(final int productIndex, final int producer) {
+		return producerIndex[producerStart[productIndex] + producer];
+	}
+
+	/**
+	 * number of sources producing the given product
+	 */
+	public int getProducerCount(final int productIndex) {
+		return producerStart[productIndex + 1] - producerStart[productIndex];
+	}
+
 	/**
 	 * map product index to product
 	 */
@@ -302,12 +1671,19 @@ public class CompiledCloud {
 	 * map product to product index
 	 */
 	public int getProduct(final Product product) {
-		for (int pi = 0; pi < products.length; pi++) {
-			if (0 == NamedComparator.SINGELTON.compare(products[pi], product)) {
-				return pi;
-			}
+		if (product == null) {
+			return -1;
 		}
-		return -1;
+		final Integer productIndex = productNames.get(product.getName());
+		return (productIndex == null) ? -1 : productIndex;
+	}
+
+	/**
+	 * number of product groups handled by the search; products produced by
+	 * the same sources share a group
+	 */
+	public int getProductClassCount() {
+		return columns.productCount();
 	}
 
 	/**
@@ -321,12 +1697,10 @@ public class CompiledCloud {
 	 * List of products produced by this source
 	 */
 	public List<Product> getProducts(final Source source) {
-		final ArrayList<Product> back = new ArrayList<Product>();
-		final int sourceIndex = getSource(source);
-		for (int porductIndex = 0; porductIndex < products.length; porductIndex++) {
-			if (data[sourceIndex][porductIndex]) {
-				back.add(products[porductIndex]);
-			}
+		final int[] produced = coverage.products(getSource(source));
+		final ArrayList<Product> back = new ArrayList<Product>(produced.length);
+		for (final int productIndex : produced) {
+			back.add(products[productIndex]);
 		}
 		return back;
 	}
@@ -342,12 +1716,11 @@ public class CompiledCloud {
 	 * map source to source index
 	 */
 	public int getSource(final Source source) {
-		for (int si = 0; si < sources.length; si++) {
-			if (0 == NamedComparator.SINGELTON.compare(sources[si], source)) {
-				return si;
-			}
+		if (source == null) {
+			return -1;
 		}
-		return -1;
+		final Integer sourceIndex = sourceNames.get(source.getName());
+		return (sourceIndex == null) ? -1 : sourceIndex;
 	}
 
 	/**
@@ -361,11 +1734,11 @@ public class CompiledCloud {
 	 * all sources producing the given product
 	 */
 	public List<Source> getSources(final int productIndex) {
-		final ArrayList<Source> back = new ArrayList<Source>();
-		for (int si = 0; si < sources.length; si++) {
-			if (data[si][productIndex]) {
-				back.add(sources[si]);
-			}
+		final int end = producerStart[productIndex + 1];
+		final ArrayList<Source> back = new ArrayList<Source>(end
+				- producerStart[productIndex]);
+		for (int i = producerStart[productIndex]; i < end; i++) {
+			back.add(sources[producerIndex[i]]);
 		}
 		return back;
 	}
@@ -381,7 +1754,7 @@ public class CompiledCloud {
 	 * amount of the given product produced by the given source
 	 */
 	public float getValue(final int sourceIndex, final int productIndex) {
-		return valueData[sourceIndex][productIndex];
+		return coverage.getValue(sourceIndex, productIndex);
 	}
 
 	/**
@@ -393,6 +1766,13 @@ public class CompiledCloud {
 		return getValue(sourceIndex, productIndex);
 	}
 
+	/**
+	 * initialize a new lazy greedy search
+	 */
+	public GreedySearch initGreedySearch() {
+		return new GreedySearch(this);
+	}
+
 	/**
 	 * initialize a new SearchState
 	 */
@@ -400,4 +1780,29 @@ public class CompiledCloud {
 		return new SearchState();
 	}
 
+	/**
+	 * check if the given source produces the given product
+	 */
+	public boolean produces(final int sourceIndex, final int productIndex) {
+		return coverage.produces(sourceIndex, productIndex);
+	}
+
+	/**
+	 * weight of the given columns not set in covered; stops counting once
+	 * it exceeds limit
+	 */
+	private int uncovered(final int[] columnIndices, final long[] covered,
+			final int limit) {
+		int weight = 0;
+		for (final int column : columnIndices) {
+			if (!Bits.get(covered, column)) {
+				weight += (columnWeights == null) ? 1 : columnWeights[column];
+				if (limit < weight) {
+					break;
+				}
+			}
+		}
+		return weight;
+	}
+
 }
@@ -0,0 +1,546 @@
+/*
+ * Copyright (c) 2015 Thomas Kuehne <thomas@kuehne.cn>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package cn.kuehne.kinaseblender.engine2;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import cn.kuehne.kinaseblender.engine2.CompiledCloud.SearchState;
+
+/**
+ * Search splitting a cloud into groups of sources and products that don't
+ * share any product; each group is searched on its own and the per group
+ * optima are combined
+ */
+public class ComponentSearch implements Search {
+	/**
+	 * combination of parent source indices
+	 */
+	private static final class Found {
+		final int score;
+		final int[] sources;
+
+		Found(final int[] sources, final int score) {
+			this.sources = sources;
+			this.score = score;
+		}
+	}
+
+	/**
+	 * a single group of connected sources and products
+	 */
+	private final class Part implements Callable<Part> {
+		/**
+		 * optimum combinations per number of sources
+		 */
+		final List<Found[]> best;
+
+		/**
+		 * optimum and near-optimum combinations per number of sources
+		 */
+		final List<Found[]> close;
+
+		final CompiledCloud compiled;
+
+		Part(final CompiledCloud compiled) {
+			this.compiled = compiled;
+			best = new ArrayList<Found[]>();
+			close = new ArrayList<Found[]>();
+
+			final Found[] empty = new Found[] { new Found(new int[0], 0) };
+			best.add(empty);
+			close.add(empty);
+		}
+
+		public Part call() {
+			// drop the results of an interrupted run
+			best.subList(1, best.size()).clear();
+			close.subList(1, close.size()).clear();
+
+			final SearchState searchState = compiled.initSearch();
+			searchState.setThreads(partThreads);
+			searchState.setGreedySeed(greedySeed);
+			if (fullCoverage) {
+				searchState.setTarget(compiled.getProducedCount());
+			}
+			while (searchState.search()) {
+				best.add(toFound(searchState.combinations()));
+				close.add(toFound(searchState.closeCombinations()));
+			}
+			return this;
+		}
+
+		/**
+		 * largest number of sources adding new products
+		 */
+		int getMaxDeepth() {
+			return best.size() - 1;
+		}
+
+		int getScore(final int deepth) {
+			return best.get(deepth)[0].score;
+		}
+
+		private Found[] toFound(final Combination[] combinations) {
+			final Found[] back = new Found[combinations.length];
+			for (int index = 0; index < back.length; index++) {
+				final Source[] members = combinations[index].getSources();
+				final int[] sources = new int[members.length];
+				for (int i = 0; i < members.length; i++) {
+					sources[i] = cloud.getSource(members[i]);
+				}
+				back[index] = new Found(sources,
+						combinations[index].getProductCount());
+			}
+			return back;
+		}
+	}
+
+	/**
+	 * union-find: root of the given index
+	 */
+	private static int find(final int[] root, final int index) {
+		int current = index;
+		while (root[current] != current) {
+			root[current] = root[root[current]];
+			current = root[current];
+		}
+		return current;
+	}
+
+	private Combination[] best;
+	private final int capacity;
+	private Combination[] close;
+	private final CompiledCloud cloud;
+	private int deepth;
+	private boolean fullCoverage;
+	private boolean greedySeed;
+
+	/**
+	 * optimum score per number of sources when combining the first parts:
+	 * table[parts][sources]
+	 */
+	private int[][] table;
+
+	/**
+	 * group[si]: group of source si, -1 if it doesn't produce anything
+	 */
+	private final int[] group;
+
+	private final int groupCount;
+
+	/**
+	 * one cloud per group, only while searching them
+	 */
+	private List<Part> parts;
+
+	/**
+	 * number of threads extending the combinations of a single part
+	 */
+	private int partThreads;
+
+	private boolean searched;
+	private final int threads;
+
+	public ComponentSearch(final CompiledCloud cloud) {
+		this(cloud, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param threads number of threads shared by the group searches
+	 */
+	public ComponentSearch(final CompiledCloud cloud, final int threads) {
+		if (cloud == null) {
+			throw new IllegalArgumentException("no cloud");
+		}
+		if (threads < 1) {
+			throw new IllegalArgumentException("bad thread count: " + threads);
+		}
+		this.cloud = cloud;
+		this.threads = threads;
+		capacity = cloud.calculateBufferCapacity();
+		group = new int[cloud.getSourceCount()];
+		groupCount = split(group);
+		best = new Combination[0];
+		close = new Combination[0];
+	}
+
+	/**
+	 * combine the optimum combinations of all parts
+	 */
+	private void addBest(final int part, final int sources,
+			final Found[][] chosen, final List<Found[]> back) {
+		if (capacity <= back.size()) {
+			return;
+		}
+		if (part < 0) {
+			addProduct(chosen, 0, new Found[chosen.length], back);
+			return;
+		}
+		final Part current = parts.get(part);
+		final int max = Math.min(sources, current.getMaxDeepth());
+		for (int used = 0; used <= max; used++) {
+			final int rest = table[part][sources - used];
+			if (rest != Integer.MIN_VALUE
+					&& rest + current.getScore(used) == table[part + 1][sources]) {
+				chosen[part] = current.best.get(used);
+				addBest(part - 1, sources - used, chosen, back);
+			}
+		}
+	}
+
+	/**
+	 * cartesian product of the chosen combinations
+	 */
+	private void addProduct(final Found[][] chosen, final int part,
+			final Found[] current, final List<Found[]> back) {
+		if (part == chosen.length) {
+			back.add(current.clone());
+			return;
+		}
+		for (final Found found : chosen[part]) {
+			if (capacity <= back.size()) {
+				return;
+			}
+			current[part] = found;
+			addProduct(chosen, part + 1, current, back);
+		}
+	}
+
+	public Combination[] closeCombinations() {
+		return close.clone();
+	}
+
+	public Combination[] combinations() {
+		return best.clone();
+	}
+
+	public int getBestSize() {
+		return best.length;
+	}
+
+	public int getCandidateSize() {
+		return close.length;
+	}
+
+	/**
+	 * number of independent groups of sources and products
+	 */
+	public int getComponentCount() {
+		return groupCount;
+	}
+
+	public int getDeepth() {
+		return deepth;
+	}
+
+	/**
+	 * search all parts and fill table; the clouds of the parts are closed
+	 * afterwards
+	 * @return false if interrupted
+	 */
+	private boolean searchParts() {
+		parts = createParts();
+		try {
+			final List<Part> ordered = new ArrayList<Part>(parts);
+			Collections.sort(ordered, new Comparator<Part>() {
+				public int compare(final Part one, final Part other) {
+					return other.compiled.getSourceCount()
+							- one.compiled.getSourceCount();
+				}
+			});
+			if (!ordered.isEmpty() && !searchParallel(ordered)) {
+				return false;
+			}
+		} finally {
+			for (final Part part : parts) {
+				part.compiled.close();
+			}
+		}
+
+		int total = 0;
+		for (final Part part : parts) {
+			total += part.getMaxDeepth();
+		}
+		table = new int[parts.size() + 1][total + 1];
+		for (int sources = 1; sources <= total; sources++) {
+			table[0][sources] = Integer.MIN_VALUE;
+		}
+		for (int part = 0; part < parts.size(); part++) {
+			final Part current = parts.get(part);
+			for (int sources = 0; sources <= total; sources++) {
+				int max = Integer.MIN_VALUE;
+				final int limit = Math.min(sources, current.getMaxDeepth());
+				for (int used = 0; used <= limit; used++) {
+					final int rest = table[part][sources - used];
+					if (rest != Integer.MIN_VALUE) {
+						max = Math.max(max, rest + current.getScore(used));
+					}
+				}
+				table[part + 1][sources] = max;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * search the given parts on up to threads threads; the threads are
+	 * shared between the parts searched at the same time
+	 * @return false if interrupted
+	 */
+	private boolean searchParallel(final List<Part> ordered) {
+		final int concurrent = Math.min(threads, ordered.size());
+		partThreads = Math.max(1, threads / concurrent);
+		final ExecutorService executor = Executors
+				.newFixedThreadPool(concurrent);
+		try {
+			final List<Future<Part>> futures = new ArrayList<Future<Part>>();
+			for (final Part part : ordered) {
+				futures.add(executor.submit(part));
+			}
+			for (final Future<Part> future : futures) {
+				future.get();
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		} catch (final ExecutionException e) {
+			throw new IllegalStateException("search failed", e.getCause());
+		} finally {
+			executor.shutdownNow();
+			CompiledCloud.awaitTermination(executor);
+		}
+		return true;
+	}
+
+	public boolean search() {
+		if (!searched) {
+			if (!searchParts()) {
+				return false;
+			}
+			searched = true;
+		}
+
+		deepth++;
+		if (table[parts.size()].length <= deepth) {
+			best = new Combination[0];
+			close = new Combination[0];
+			return false;
+		}
+
+		final List<Found[]> optimum = new ArrayList<Found[]>();
+		addBest(parts.size() - 1, deepth, new Found[parts.size()][], optimum);
+		best = new Combination[optimum.size()];
+		for (int index = 0; index < best.length; index++) {
+			best[index] = toCombination(optimum.get(index));
+		}
+
+		// vary a single part of the first optimum
+		final Found[] first = optimum.get(0);
+		final int score = table[parts.size()][deepth];
+		final NavigableSet<boolean[]> known = new TreeSet<boolean[]>(
+				new Comparator<boolean[]>() {
+					public int compare(final boolean[] one,
+							final boolean[] other) {
+						for (int i = 0; i < one.length; i++) {
+							if (one[i] ^ other[i]) {
+								return one[i] ? 1 : -1;
+							}
+						}
+						return 0;
+					}
+				});
+		final List<Found> near = new ArrayList<Found>();
+		for (int part = 0; part < first.length; part++) {
+			final int used = first[part].sources.length;
+			for (final Found found : parts.get(part).close.get(used)) {
+				final Found[] varied = first.clone();
+				varied[part] = found;
+				final boolean[] sources = toSources(varied);
+				if (known.add(sources) && near.size() < capacity) {
+					near.add(new Found(toIndices(sources), score
+							- first[part].score + found.score));
+				}
+			}
+		}
+		Collections.sort(near, new Comparator<Found>() {
+			public int compare(final Found one, final Found other) {
+				return other.score - one.score;
+			}
+		});
+		close = new Combination[near.size()];
+		for (int index = 0; index < close.length; index++) {
+			close[index] = new Combination(cloud,
+					toSources(new Found[] { near.get(index) }));
+		}
+
+		return true;
+	}
+
+	/**
+	 * stop searching a part after the first depth producing all of its
+	 * products; must be called before the first search
+	 */
+	public void setFullCoverageTarget(final boolean target) {
+		if (searched) {
+			throw new IllegalStateException("search already started");
+		}
+		fullCoverage = target;
+	}
+
+	/**
+	 * seed each depth of the part searches with the greedy combination,
+	 * see SearchState.setGreedySeed; must be called before the first search
+	 */
+	public void setGreedySeed(final boolean seed) {
+		if (searched) {
+			throw new IllegalStateException("search already started");
+		}
+		greedySeed = seed;
+	}
+
+	/**
+	 * find groups of sources connected by common products
+	 * @param group filled with the group of each source, -1 for sources
+	 *            not producing anything
+	 * @return number of groups
+	 */
+	private int split(final int[] group) {
+		final int sourceCount = cloud.getSourceCount();
+		final int[] root = new int[sourceCount];
+		for (int si = 0; si < sourceCount; si++) {
+			root[si] = si;
+		}
+		for (int pi = 0; pi < cloud.getProductCount(); pi++) {
+			final int producers = cloud.getProducerCount(pi);
+			for (int i = 1; i < producers; i++) {
+				final int one = find(root, cloud.getProducer(pi, 0));
+				final int other = find(root, cloud.getProducer(pi, i));
+				root[Math.max(one, other)] = Math.min(one, other);
+			}
+		}
+
+		// number the groups
+		int groups = 0;
+		for (int si = 0; si < sourceCount; si++) {
+			if (cloud.coverage.degree(si) == 0) {
+				group[si] = -1;
+			} else {
+				final int r = find(root, si);
+				group[si] = (r == si) ? groups++ : group[r];
+			}
+		}
+		return groups;
+	}
+
+	/**
+	 * create a cloud per group holding its sources and products
+	 */
+	private List<Part> createParts() {
+		final int sourceCount = cloud.getSourceCount();
+		final int groups = groupCount;
+		final List<List<Integer>> groupSources = new ArrayList<List<Integer>>();
+		final List<List<Integer>> groupProducts = new ArrayList<List<Integer>>();
+		for (int g = 0; g < groups; g++) {
+			groupSources.add(new ArrayList<Integer>());
+			groupProducts.add(new ArrayList<Integer>());
+		}
+		for (int si = 0; si < sourceCount; si++) {
+			if (-1 < group[si]) {
+				groupSources.get(group[si]).add(si);
+			}
+		}
+		final int[] local = new int[cloud.getProductCount()];
+		for (int pi = 0; pi < local.length; pi++) {
+			if (0 < cloud.getProducerCount(pi)) {
+				final List<Integer> products = groupProducts
+						.get(group[cloud.getProducer(pi, 0)]);
+				local[pi] = products.size();
+				products.add(pi);
+			}
+		}
+
+		final List<Part> back = new ArrayList<Part>(groups);
+		for (int g = 0; g < groups; g++) {
+			final List<Integer> sourceList = groupSources.get(g);
+			final List<Integer> productList = groupProducts.get(g);
+			final Source[] partSources = new Source[sourceList.size()];
+			final int[][] produces = new int[partSources.length][];
+			for (int i = 0; i < partSources.length; i++) {
+				final int si = sourceList.get(i);
+				partSources[i] = cloud.getSource(si);
+				produces[i] = cloud.coverage.products(si).clone();
+				for (int k = 0; k < produces[i].length; k++) {
+					produces[i][k] = local[produces[i][k]];
+				}
+			}
+			final Product[] partProducts = new Product[productList.size()];
+			for (int i = 0; i < partProducts.length; i++) {
+				partProducts[i] = cloud.getProduct(productList.get(i));
+			}
+			back.add(new Part(new CompiledCloud(partSources, partProducts,
+					cloud.coverage.create(partProducts.length, produces))));
+		}
+		return back;
+	}
+
+	private Combination toCombination(final Found[] found) {
+		return new Combination(cloud, toSources(found));
+	}
+
+	private int[] toIndices(final boolean[] sources) {
+		int count = 0;
+		for (final boolean member : sources) {
+			if (member) {
+				count++;
+			}
+		}
+		final int[] back = new int[count];
+		count = 0;
+		for (int si = 0; si < sources.length; si++) {
+			if (sources[si]) {
+				back[count++] = si;
+			}
+		}
+		return back;
+	}
+
+	private boolean[] toSources(final Found[] found) {
+		final boolean[] back = new boolean[cloud.getSourceCount()];
+		for (final Found part : found) {
+			for (final int si : part.sources) {
+				back[si] = true;
+			}
+		}
+		return back;
+	}
+}
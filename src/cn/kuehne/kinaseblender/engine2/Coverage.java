@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2015 Thomas Kuehne <thomas@kuehne.cn>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package cn.kuehne.kinaseblender.engine2;
+
+/**
+ * storage of the Source-Product matrix used by CompiledCloud
+ */
+abstract class Coverage {
+	private final int productCount;
+	private final int sourceCount;
+
+	Coverage(final int sources, final int products) {
+		sourceCount = sources;
+		productCount = products;
+	}
+
+	/**
+	 * release the storage; it can't be used afterwards
+	 */
+	void close() {
+		// noop
+	}
+
+	/**
+	 * create a Coverage of the same kind without amounts
+	 * @param products number of products
+	 * @param produces ascending product indices per source
+	 */
+	abstract Coverage create(int products, int[][] produces);
+
+	/**
+	 * number of products produced by the given source
+	 */
+	abstract int degree(int sourceIndex);
+
+	/**
+	 * weight of the products of the given source not yet set in covered
+	 * @param weights weight per product; null if every product counts 1
+	 */
+	abstract int gain(int sourceIndex, long[] covered, int[] weights);
+
+	/**
+	 * amount of the given product produced by the given source; 0 if this
+	 * Coverage has no amounts
+	 */
+	abstract float getValue(int sourceIndex, int productIndex);
+
+	/**
+	 * estimated number of bytes used by this storage
+	 */
+	abstract long memory();
+
+	/**
+	 * target |= products of the given source
+	 * @param weights weight per product; null if every product counts 1
+	 * @return weight of the products newly set in target
+	 */
+	abstract int orGain(int sourceIndex, long[] target, int[] weights);
+
+	/**
+	 * twice |= once & products of the given source, then once |= products
+	 * of the given source
+	 */
+	abstract void orTwice(int sourceIndex, long[] once, long[] twice);
+
+	/**
+	 * check if the given source produces the given product
+	 */
+	abstract boolean produces(int sourceIndex, int productIndex);
+
+	/**
+	 * total number of products
+	 */
+	final int productCount() {
+		return productCount;
+	}
+
+	/**
+	 * ascending indices of the products produced by the given source; the
+	 * result must not be modified
+	 */
+	abstract int[] products(int sourceIndex);
+
+	/**
+	 * check if every product of source one is produced by source other
+	 */
+	abstract boolean subset(int one, int other);
+
+	/**
+	 * total number of sources
+	 */
+	final int sourceCount() {
+		return sourceCount;
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2015 Thomas Kuehne <thomas@kuehne.cn>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package cn.kuehne.kinaseblender.engine2;
+
+/**
+ * Coverage storing one packed bit set and one amount array per source
+ */
+final class DenseCoverage extends Coverage {
+	private final long[][] rows;
+	private final float[][] values;
+
+	/**
+	 * @param amounts amount matrix, null for a Coverage without amounts
+	 */
+	DenseCoverage(final int products, final long[][] produces,
+			final float[][] amounts) {
+		super(produces.length, products);
+		final int words = Bits.words(products);
+		for (int sourceIndex = 0; sourceIndex < produces.length; sourceIndex++) {
+			final long[] entry = produces[sourceIndex];
+			if (entry == null) {
+				throw new IllegalArgumentException("no data for source "
+						+ sourceIndex);
+			}
+			if (entry.length != words) {
+				throw new IllegalArgumentException("data has " + entry.length
+						+ " words instead of " + words + " for source "
+						+ sourceIndex);
+			}
+		}
+		if (amounts != null && amounts.length != produces.length) {
+			throw new IllegalArgumentException("amounts don't match data");
+		}
+		rows = produces;
+		values = amounts;
+	}
+
+	@Override
+	Coverage create(final int products, final int[][] produces) {
+		final long[][] data = new long[produces.length][Bits.words(products)];
+		for (int si = 0; si < produces.length; si++) {
+			for (final int productIndex : produces[si]) {
+				Bits.set(data[si], productIndex);
+			}
+		}
+		return new DenseCoverage(products, data, null);
+	}
+
+	@Override
+	int degree(final int sourceIndex) {
+		return Bits.count(rows[sourceIndex]);
+	}
+
+	@Override
+	float getValue(final int sourceIndex, final int productIndex) {
+		return (values == null) ? 0.0f : values[sourceIndex][productIndex];
+	}
+
+	@Override
+	long memory() {
+		long bytes = 0;
+		for (int si = 0; si < rows.length; si++) {
+			bytes += 8L * rows[si].length;
+			if (values != null) {
+				bytes += 4L * values[si].length;
+			}
+		}
+		return bytes;
+	}
+
+	@Override
+	int gain(final int sourceIndex, final long[] covered,
+			final int[] weights) {
+		return Bits.gain(covered, rows[sourceIndex], weights);
+	}
+
+	@Override
+	int orGain(final int sourceIndex, final long[] target,
+			final int[] weights) {
+		return Bits.orGain(target, rows[sourceIndex], weights);
+	}
+
+	@Override
+	void orTwice(final int sourceIndex, final long[] once, final long[] twice) {
+		Bits.orTwice(once, twice, rows[sourceIndex]);
+	}
+
+	@Override
+	boolean produces(final int sourceIndex, final int productIndex) {
+		return Bits.get(rows[sourceIndex], productIndex);
+	}
+
+	@Override
+	boolean subset(final int one, final int other) {
+		final long[] oneRow = rows[one];
+		final long[] otherRow = rows[other];
+		for (int wi = 0; wi < oneRow.length; wi++) {
+			if (0 != (oneRow[wi] & ~otherRow[wi])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	int[] products(final int sourceIndex) {
+		final long[] row = rows[sourceIndex];
+		final int[] back = new int[Bits.count(row)];
+		int index = 0;
+		for (int wi = 0; wi < row.length; wi++) {
+			long word = row[wi];
+			while (word != 0) {
+				back[index++] = (wi << 6) + Long.numberOfTrailingZeros(word);
+				word &= word - 1;
+			}
+		}
+		return back;
+	}
+}
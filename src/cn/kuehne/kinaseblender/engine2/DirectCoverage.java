@@ -0,0 +1,316 @@
+/*
+ * Copyright (c) 2015 Thomas Kuehne <thomas@kuehne.cn>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package cn.kuehne.kinaseblender.engine2;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Coverage storing packed bit sets and amounts outside of the Java heap
+ */
+final class DirectCoverage extends Coverage {
+	/**
+	 * maximum number of bytes per direct buffer
+	 */
+	private static final int BLOCK_BYTES = 1 << 28;
+
+	/**
+	 * Method freeing a direct buffer, called on FREE_TARGET; null if the
+	 * JDK offers none
+	 */
+	private static final Method FREE;
+
+	/**
+	 * the Unsafe instance for FREE, null if FREE is Cleaner.clean
+	 */
+	private static final Object FREE_TARGET;
+
+	/**
+	 * Method returning the Cleaner of a direct buffer for FREE, Java 8 and
+	 * older only
+	 */
+	private static final Method GET_CLEANER;
+
+	static {
+		Method free = null;
+		Object target = null;
+		Method getCleaner = null;
+		try {
+			// Java 9 and newer
+			final Class<?> unsafe = Class.forName("sun.misc.Unsafe");
+			free = unsafe.getMethod("invokeCleaner", ByteBuffer.class);
+			final Field instance = unsafe.getDeclaredField("theUnsafe");
+			instance.setAccessible(true);
+			target = instance.get(null);
+		} catch (final Exception e) {
+			free = null;
+			target = null;
+			try {
+				// Java 8 and older
+				getCleaner = Class.forName("sun.nio.ch.DirectBuffer")
+						.getMethod("cleaner");
+				free = Class.forName("sun.misc.Cleaner").getMethod("clean");
+			} catch (final Exception e2) {
+				free = null;
+				getCleaner = null;
+			}
+		}
+		FREE = free;
+		FREE_TARGET = target;
+		GET_CLEANER = getCleaner;
+	}
+
+	/**
+	 * free the memory of a direct buffer now instead of once it is
+	 * collected; does nothing if the JDK offers no way
+	 */
+	private static void free(final ByteBuffer buffer) {
+		if (FREE == null) {
+			return;
+		}
+		try {
+			if (GET_CLEANER == null) {
+				FREE.invoke(FREE_TARGET, buffer);
+			} else {
+				final Object cleaner = GET_CLEANER.invoke(buffer);
+				if (cleaner != null) {
+					FREE.invoke(cleaner);
+				}
+			}
+		} catch (final Exception e) {
+			// left to the garbage collector
+		}
+	}
+
+	/**
+	 * the allocated direct buffers, kept to free them in close
+	 */
+	private final List<ByteBuffer> allocated;
+
+	private ByteBuffer allocate(final int bytes) {
+		final ByteBuffer back = ByteBuffer.allocateDirect(bytes).order(
+				ByteOrder.nativeOrder());
+		allocated.add(back);
+		return back;
+	}
+
+	private LongBuffer[] allocateLongs(final int rows,
+			final int rowsPerBlock, final int rowLength) {
+		final LongBuffer[] back = new LongBuffer[(rows + rowsPerBlock - 1)
+				/ rowsPerBlock];
+		for (int block = 0; block < back.length; block++) {
+			final int blockRows = Math.min(rowsPerBlock, rows - block
+					* rowsPerBlock);
+			back[block] = allocate(8 * blockRows * rowLength).asLongBuffer();
+		}
+		return back;
+	}
+
+	private FloatBuffer[] allocateFloats(final int rows,
+			final int rowsPerBlock, final int rowLength) {
+		final FloatBuffer[] back = new FloatBuffer[(rows + rowsPerBlock - 1)
+				/ rowsPerBlock];
+		for (int block = 0; block < back.length; block++) {
+			final int blockRows = Math.min(rowsPerBlock, rows - block
+					* rowsPerBlock);
+			back[block] = allocate(4 * blockRows * rowLength).asFloatBuffer();
+		}
+		return back;
+	}
+
+	private LongBuffer[] bits;
+	private final int bitsPerBlock;
+	private FloatBuffer[] values;
+	private final int valuesPerBlock;
+	private final boolean withValues;
+	private final int words;
+
+	/**
+	 * @param amounts store amounts
+	 */
+	DirectCoverage(final int sources, final int products,
+			final boolean amounts) {
+		super(sources, products);
+		if (Integer.MAX_VALUE / 4 < products) {
+			throw new IllegalArgumentException("too many products: "
+					+ products);
+		}
+		words = Bits.words(products);
+		bitsPerBlock = Math.max(1, BLOCK_BYTES / (8 * words));
+		valuesPerBlock = Math.max(1, BLOCK_BYTES / (4 * products));
+		allocated = new ArrayList<ByteBuffer>();
+		bits = allocateLongs(sources, bitsPerBlock, words);
+		withValues = amounts;
+		if (withValues) {
+			values = allocateFloats(sources, valuesPerBlock, products);
+		}
+	}
+
+	private LongBuffer bits(final int sourceIndex) {
+		final LongBuffer[] current = bits;
+		if (current == null) {
+			throw new IllegalStateException("closed");
+		}
+		return current[sourceIndex / bitsPerBlock];
+	}
+
+	private int bitsOffset(final int sourceIndex) {
+		return (sourceIndex % bitsPerBlock) * words;
+	}
+
+	/**
+	 * free the direct buffers right away; no other thread may use this
+	 * Coverage any more
+	 */
+	@Override
+	void close() {
+		bits = null;
+		values = null;
+		for (final ByteBuffer buffer : allocated) {
+			free(buffer);
+		}
+		allocated.clear();
+	}
+
+	@Override
+	Coverage create(final int products, final int[][] produces) {
+		final DirectCoverage back = new DirectCoverage(produces.length,
+				products, false);
+		for (int si = 0; si < produces.length; si++) {
+			for (final int productIndex : produces[si]) {
+				back.set(si, productIndex, 0.0f);
+			}
+		}
+		return back;
+	}
+
+	@Override
+	int degree(final int sourceIndex) {
+		return Bits.count(bits(sourceIndex), bitsOffset(sourceIndex), words);
+	}
+
+	@Override
+	float getValue(final int sourceIndex, final int productIndex) {
+		if (!withValues) {
+			return 0.0f;
+		}
+		final FloatBuffer[] current = values;
+		if (current == null) {
+			throw new IllegalStateException("closed");
+		}
+		return current[sourceIndex / valuesPerBlock].get((sourceIndex % valuesPerBlock)
+				* productCount() + productIndex);
+	}
+
+	@Override
+	long memory() {
+		long bytes = 8L * sourceCount() * words;
+		if (withValues) {
+			bytes += 4L * sourceCount() * productCount();
+		}
+		return bytes;
+	}
+
+	@Override
+	int gain(final int sourceIndex, final long[] covered,
+			final int[] weights) {
+		return Bits.gain(covered, bits(sourceIndex), bitsOffset(sourceIndex),
+				weights);
+	}
+
+	@Override
+	int orGain(final int sourceIndex, final long[] target,
+			final int[] weights) {
+		return Bits.orGain(target, bits(sourceIndex), bitsOffset(sourceIndex),
+				weights);
+	}
+
+	@Override
+	void orTwice(final int sourceIndex, final long[] once, final long[] twice) {
+		final LongBuffer block = bits(sourceIndex);
+		final int offset = bitsOffset(sourceIndex);
+		for (int wi = 0; wi < words; wi++) {
+			final long word = block.get(offset + wi);
+			twice[wi] |= once[wi] & word;
+			once[wi] |= word;
+		}
+	}
+
+	@Override
+	boolean produces(final int sourceIndex, final int productIndex) {
+		final long word = bits(sourceIndex).get(bitsOffset(sourceIndex)
+				+ (productIndex >>> 6));
+		return 0 != (word & (1L << productIndex));
+	}
+
+	@Override
+	int[] products(final int sourceIndex) {
+		final LongBuffer block = bits(sourceIndex);
+		final int offset = bitsOffset(sourceIndex);
+		final int[] back = new int[degree(sourceIndex)];
+		int index = 0;
+		for (int wi = 0; wi < words; wi++) {
+			long word = block.get(offset + wi);
+			while (word != 0) {
+				back[index++] = (wi << 6) + Long.numberOfTrailingZeros(word);
+				word &= word - 1;
+			}
+		}
+		return back;
+	}
+
+	@Override
+	boolean subset(final int one, final int other) {
+		final LongBuffer oneBlock = bits(one);
+		final int oneOffset = bitsOffset(one);
+		final LongBuffer otherBlock = bits(other);
+		final int otherOffset = bitsOffset(other);
+		for (int wi = 0; wi < words; wi++) {
+			if (0 != (oneBlock.get(oneOffset + wi) & ~otherBlock
+					.get(otherOffset + wi))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * store a single Source-Product pair; only used while compiling
+	 */
+	void set(final int sourceIndex, final int productIndex, final float value) {
+		final LongBuffer block = bits(sourceIndex);
+		final int index = bitsOffset(sourceIndex) + (productIndex >>> 6);
+		block.put(index, block.get(index) | (1L << productIndex));
+		if (withValues) {
+			values[sourceIndex / valuesPerBlock].put(
+					(sourceIndex % valuesPerBlock) * productCount()
+							+ productIndex, value);
+		}
+	}
+}
@@ -0,0 +1,329 @@
+/*
+ * Copyright (c) 2015 Thomas Kuehne <thomas@kuehne.cn>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package cn.kuehne.kinaseblender.engine2;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * exact branch and bound search for the combinations of a fixed number of
+ * sources producing the most products
+ */
+public class ExactSearch {
+	/**
+	 * all combinations starting with a single source chosen at the root
+	 */
+	private final class Subtree implements Callable<Subtree> {
+		private final int bound;
+		private final int[] candidates;
+		private final int[] gains;
+		private final int position;
+
+		Subtree(final int[] candidates, final int[] gains, final int position,
+				final int bound) {
+			this.candidates = candidates;
+			this.gains = gains;
+			this.position = position;
+			this.bound = bound;
+		}
+
+		public Subtree call() {
+			if (!pruned(bound)) {
+				branch(new int[depth], 0, new long[words], 0, candidates,
+						gains, position);
+			}
+			return this;
+		}
+	}
+
+	private volatile int bestScore;
+	private final int capacity;
+	private final CompiledCloud cloud;
+
+	/**
+	 * false if there might be more optimum combinations than found
+	 */
+	private volatile boolean complete;
+
+	private final int depth;
+	private final List<int[]> found;
+
+	/**
+	 * found can't take more combinations
+	 */
+	private volatile boolean full;
+
+	private boolean searched;
+	private final int threads;
+	private final int words;
+
+	public ExactSearch(final CompiledCloud cloud, final int depth) {
+		this(cloud, depth, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param depth number of sources per combination
+	 * @param threads maximum number of subtrees searched at the same time
+	 */
+	public ExactSearch(final CompiledCloud cloud, final int depth,
+			final int threads) {
+		if (cloud == null) {
+			throw new IllegalArgumentException("no cloud");
+		}
+		if (depth < 1 || cloud.getSourceCount() < depth) {
+			throw new IllegalArgumentException("bad depth: " + depth);
+		}
+		if (threads < 1) {
+			throw new IllegalArgumentException("bad thread count: " + threads);
+		}
+		this.cloud = cloud;
+		this.depth = depth;
+		this.threads = threads;
+		capacity = cloud.calculateBufferCapacity();
+		words = Bits.words(cloud.columns.productCount());
+		found = new ArrayList<int[]>();
+	}
+
+	/**
+	 * choose candidates[position] and search all combinations below it
+	 */
+	private void branch(final int[] chosen, final int count,
+			final long[] covered, final int score, final int[] candidates,
+			final int[] gains, final int position) {
+		final int si = candidates[position];
+		final long[] next = covered.clone();
+		cloud.columns.orGain(si, next, cloud.columnWeights);
+		chosen[count] = si;
+		expand(chosen, count + 1, next, score + gains[position], Arrays
+				.copyOfRange(candidates, position + 1, candidates.length));
+	}
+
+	/**
+	 * search all combinations extending chosen[0] .. chosen[count - 1] by the
+	 * given candidates
+	 */
+	private void expand(final int[] chosen, final int count,
+			final long[] covered, final int score, final int[] candidates) {
+		final int rest = depth - count;
+		if (rest == 0) {
+			offer(chosen, score);
+			return;
+		}
+		if (candidates.length < rest || Thread.currentThread().isInterrupted()) {
+			return;
+		}
+
+		final int[] gains = new int[candidates.length];
+		rank(covered, candidates, gains);
+
+		// the gains only shrink below this node: the best rest candidates
+		// bound every extension, and the bound falls with the position;
+		// no extension can cover more than the uncovered products
+		int window = 0;
+		for (int i = 0; i < rest; i++) {
+			window += gains[i];
+		}
+		final int uncovered = cloud.getProductCount() - score;
+		for (int position = 0;; position++) {
+			if (pruned(score + Math.min(window, uncovered))) {
+				return;
+			}
+			branch(chosen, count, covered, score, candidates, gains, position);
+			if (candidates.length <= position + rest) {
+				return;
+			}
+			window += gains[position + rest] - gains[position];
+		}
+	}
+
+	/**
+	 * number of products produced by the optimum combinations
+	 */
+	public int getScore() {
+		checkSearched();
+		return bestScore;
+	}
+
+	private void checkSearched() {
+		if (!searched) {
+			throw new IllegalStateException("not searched");
+		}
+	}
+
+	/**
+	 * score of the greedy combination: a lower bound of the optimum
+	 */
+	private int greedy() {
+		final GreedySearch greedy = cloud.initGreedySearch();
+		while (greedy.getDeepth() < depth && greedy.search()) {
+			// next depth
+		}
+		return greedy.getScore();
+	}
+
+	/**
+	 * false if there might be more optimum combinations than returned by
+	 * search
+	 */
+	public boolean isComplete() {
+		checkSearched();
+		return complete;
+	}
+
+	/**
+	 * record a combination of depth sources
+	 */
+	private synchronized void offer(final int[] chosen, final int score) {
+		if (bestScore < score) {
+			found.clear();
+			full = false;
+			complete = true;
+			bestScore = score;
+		}
+		if (bestScore == score) {
+			if (full) {
+				complete = false;
+			} else {
+				final int[] sources = chosen.clone();
+				Arrays.sort(sources);
+				found.add(sources);
+				full = capacity <= found.size();
+			}
+		}
+	}
+
+	/**
+	 * check if a subtree with the given upper bound can be skipped
+	 */
+	private boolean pruned(final int bound) {
+		if (bound < bestScore) {
+			return true;
+		}
+		if (bound == bestScore && full) {
+			complete = false;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * sort candidates by descending gain, then by index; gains receives the
+	 * sorted gains
+	 */
+	private void rank(final long[] covered, final int[] candidates,
+			final int[] gains) {
+		final long[] keys = new long[candidates.length];
+		for (int i = 0; i < candidates.length; i++) {
+			final int gain = cloud.columns.gain(candidates[i], covered,
+					cloud.columnWeights);
+			keys[i] = ((long) (Integer.MAX_VALUE - gain) << 32) | candidates[i];
+		}
+		Arrays.sort(keys);
+		for (int i = 0; i < candidates.length; i++) {
+			candidates[i] = (int) keys[i];
+			gains[i] = Integer.MAX_VALUE - (int) (keys[i] >>> 32);
+		}
+	}
+
+	/**
+	 * find the optimum combinations, at most as many as the buffer capacity
+	 * of the cloud
+	 */
+	public Combination[] search() {
+		if (!searched) {
+			searchSubtrees();
+			searched = true;
+		}
+
+		final List<int[]> sorted = new ArrayList<int[]>(found);
+		Collections.sort(sorted, new Comparator<int[]>() {
+			public int compare(final int[] one, final int[] other) {
+				for (int i = 0; i < one.length; i++) {
+					if (one[i] != other[i]) {
+						return one[i] - other[i];
+					}
+				}
+				return 0;
+			}
+		});
+		final Combination[] back = new Combination[sorted.size()];
+		for (int index = 0; index < back.length; index++) {
+			final boolean[] sources = new boolean[cloud.getSourceCount()];
+			for (final int si : sorted.get(index)) {
+				sources[si] = true;
+			}
+			back[index] = new Combination(cloud, sources);
+		}
+		return back;
+	}
+
+	/**
+	 * rank all sources and search the subtree of each one on up to threads
+	 * threads
+	 */
+	private void searchSubtrees() {
+		bestScore = greedy();
+		complete = true;
+
+		final int[] candidates = new int[cloud.getSourceCount()];
+		for (int si = 0; si < candidates.length; si++) {
+			candidates[si] = si;
+		}
+		final int[] gains = new int[candidates.length];
+		rank(new long[words], candidates, gains);
+
+		final ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			final List<Future<Subtree>> futures = new ArrayList<Future<Subtree>>();
+			int window = 0;
+			for (int i = 0; i < depth; i++) {
+				window += gains[i];
+			}
+			for (int position = 0; position + depth <= candidates.length; position++) {
+				futures.add(executor.submit(new Subtree(candidates, gains,
+						position, Math.min(window, cloud.getProductCount()))));
+				if (position + depth < candidates.length) {
+					window += gains[position + depth] - gains[position];
+				}
+			}
+			for (final Future<Subtree> future : futures) {
+				future.get();
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted", e);
+		} catch (final ExecutionException e) {
+			throw new IllegalStateException("search failed", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2015 Thomas Kuehne <thomas@kuehne.cn>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package cn.kuehne.kinaseblender.engine2;
+
+/**
+ * fixed size open addressing map from fingerprint to array index
+ */
+final class FingerprintIndex {
+	private final long[] keys;
+	private final int mask;
+
+	/**
+	 * index + 1, 0 for empty slots
+	 */
+	private final int[] values;
+
+	/**
+	 * @param entries maximum number of entries
+	 */
+	FingerprintIndex(final int entries) {
+		final int slots = Integer.highestOneBit(Math.max(entries, 1)) << 2;
+		keys = new long[slots];
+		values = new int[slots];
+		mask = slots - 1;
+	}
+
+	/**
+	 * index stored for the given fingerprint, -1 if none
+	 */
+	int get(final long key) {
+		int slot = (int) (key ^ (key >>> 32)) & mask;
+		while (values[slot] != 0) {
+			if (keys[slot] == key) {
+				return values[slot] - 1;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * store an index; the first index stored for a fingerprint is kept
+	 */
+	void put(final long key, final int index) {
+		int slot = (int) (key ^ (key >>> 32)) & mask;
+		while (values[slot] != 0) {
+			if (keys[slot] == key) {
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+		keys[slot] = key;
+		values[slot] = index + 1;
+	}
+}
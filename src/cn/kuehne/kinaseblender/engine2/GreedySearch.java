@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2015 Thomas Kuehne <thomas@kuehne.cn>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package cn.kuehne.kinaseblender.engine2;
+
+import java.util.PriorityQueue;
+
+/**
+ * lazy greedy search: each depth adds the source with the largest marginal
+ * gain to the previous combination. Marginal gains only shrink, so stale
+ * gains are upper bounds and only the sources reaching the head of the queue
+ * are evaluated again.
+ */
+public class GreedySearch implements Search {
+	/**
+	 * the score of a greedy combination is at least this fraction of the
+	 * optimum score of the same number of sources
+	 */
+	public static final double GUARANTEE = 1 - 1 / Math.E;
+
+	/**
+	 * queue key: descending gain, then ascending source index
+	 */
+	private static long key(final int gain, final int sourceIndex) {
+		return ((long) (Integer.MAX_VALUE - gain) << 32) | sourceIndex;
+	}
+
+	private Combination[] best;
+	private final boolean[] chosen;
+	private final CompiledCloud cloud;
+	private final long[] covered;
+	private int deepth;
+	private final PriorityQueue<Long> queue;
+
+	/**
+	 * score per number of sources
+	 */
+	private final int[] scores;
+
+	/**
+	 * depth at which the queued gain of a source was calculated
+	 */
+	private final int[] updated;
+
+	public GreedySearch(final CompiledCloud cloud) {
+		if (cloud == null) {
+			throw new IllegalArgumentException("no cloud");
+		}
+		this.cloud = cloud;
+		final int sourceCount = cloud.getSourceCount();
+		best = new Combination[0];
+		chosen = new boolean[sourceCount];
+		covered = new long[Bits.words(cloud.columns.productCount())];
+		scores = new int[sourceCount + 1];
+		updated = new int[sourceCount];
+		queue = new PriorityQueue<Long>(sourceCount);
+		for (int si = 0; si < sourceCount; si++) {
+			queue.add(key(cloud.columns.gain(si, covered, cloud.columnWeights),
+					si));
+		}
+	}
+
+	public Combination[] closeCombinations() {
+		return combinations();
+	}
+
+	public Combination[] combinations() {
+		return best.clone();
+	}
+
+	public int getBestSize() {
+		return best.length;
+	}
+
+	public int getCandidateSize() {
+		return best.length;
+	}
+
+	public int getDeepth() {
+		return deepth;
+	}
+
+	/**
+	 * number of products produced by the current combination
+	 */
+	public int getScore() {
+		return scores[deepth];
+	}
+
+	/**
+	 * number of products produced by the greedy combination of the given
+	 * number of sources; a lower bound of the optimum score
+	 */
+	public int getScore(final int sources) {
+		if (sources < 0 || deepth < sources) {
+			throw new IllegalArgumentException("not searched: " + sources);
+		}
+		return scores[sources];
+	}
+
+	/**
+	 * check if the given source is part of the current combination
+	 */
+	boolean isChosen(final int sourceIndex) {
+		return chosen[sourceIndex];
+	}
+
+	/**
+	 * upper bound of the optimum score of getDeepth() sources
+	 */
+	public int getUpperBound() {
+		final double bound = Math.floor(getScore() / GUARANTEE + 1e-9);
+		return (int) Math.min(bound, cloud.getProductCount());
+	}
+
+	public boolean search() {
+		while (!queue.isEmpty()) {
+			final long head = queue.poll();
+			final int si = (int) head;
+			if (updated[si] != deepth) {
+				updated[si] = deepth;
+				queue.add(key(cloud.columns.gain(si, covered,
+						cloud.columnWeights), si));
+			} else {
+				final int gain = Integer.MAX_VALUE - (int) (head >>> 32);
+				if (gain < 1) {
+					break;
+				}
+				chosen[si] = true;
+				cloud.columns.orGain(si, covered, cloud.columnWeights);
+				scores[deepth + 1] = scores[deepth] + gain;
+				deepth++;
+				best = new Combination[] { new Combination(cloud,
+						chosen.clone()) };
+				return true;
+			}
+		}
+		best = new Combination[0];
+		return false;
+	}
+}
@@ -0,0 +1,348 @@
+/*
+ * Copyright (c) 2015 Thomas Kuehne <thomas@kuehne.cn>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package cn.kuehne.kinaseblender.engine2;
+
+import java.nio.LongBuffer;
+
+/**
+ * coverage operations on packed bit sets, stored in arrays or in direct
+ * buffers; the implementation is chosen once at startup by the system
+ * property "kinaseblender.kernel": "unrolled" (default) or "scalar"
+ */
+abstract class Kernel {
+	/**
+	 * one word per step
+	 */
+	static final class Scalar extends Kernel {
+		@Override
+		int count(final long[] set) {
+			int count = 0;
+			for (int wi = 0; wi < set.length; wi++) {
+				count += Long.bitCount(set[wi]);
+			}
+			return count;
+		}
+
+		@Override
+		int count(final LongBuffer set, final int offset, final int words) {
+			int count = 0;
+			for (int wi = 0; wi < words; wi++) {
+				count += Long.bitCount(set.get(offset + wi));
+			}
+			return count;
+		}
+
+		@Override
+		int gain(final long[] covered, final long[] row, final int[] weights) {
+			int gain = 0;
+			for (int wi = 0; wi < covered.length; wi++) {
+				final long fresh = row[wi] & ~covered[wi];
+				if (fresh != 0) {
+					gain += Bits.weight(wi, fresh, weights);
+				}
+			}
+			return gain;
+		}
+
+		@Override
+		int gain(final long[] covered, final LongBuffer row, final int offset,
+				final int[] weights) {
+			int gain = 0;
+			for (int wi = 0; wi < covered.length; wi++) {
+				final long fresh = row.get(offset + wi) & ~covered[wi];
+				if (fresh != 0) {
+					gain += Bits.weight(wi, fresh, weights);
+				}
+			}
+			return gain;
+		}
+
+		@Override
+		String getName() {
+			return "scalar";
+		}
+
+		@Override
+		int orGain(final long[] target, final long[] row, final int[] weights) {
+			int gain = 0;
+			for (int wi = 0; wi < target.length; wi++) {
+				final long fresh = row[wi] & ~target[wi];
+				if (fresh != 0) {
+					target[wi] |= fresh;
+					gain += Bits.weight(wi, fresh, weights);
+				}
+			}
+			return gain;
+		}
+
+		@Override
+		int orGain(final long[] target, final LongBuffer row,
+				final int offset, final int[] weights) {
+			int gain = 0;
+			for (int wi = 0; wi < target.length; wi++) {
+				final long fresh = row.get(offset + wi) & ~target[wi];
+				if (fresh != 0) {
+					target[wi] |= fresh;
+					gain += Bits.weight(wi, fresh, weights);
+				}
+			}
+			return gain;
+		}
+	}
+
+	/**
+	 * four independent words per step without branches, so the JIT can keep
+	 * several popcounts in flight; weighted operations use the scalar loop
+	 */
+	static final class Unrolled extends Kernel {
+		private final Kernel scalar = new Scalar();
+
+		@Override
+		int count(final long[] set) {
+			final int end = set.length & ~3;
+			int a = 0;
+			int b = 0;
+			int c = 0;
+			int d = 0;
+			int wi = 0;
+			for (; wi < end; wi += 4) {
+				a += Long.bitCount(set[wi]);
+				b += Long.bitCount(set[wi + 1]);
+				c += Long.bitCount(set[wi + 2]);
+				d += Long.bitCount(set[wi + 3]);
+			}
+			for (; wi < set.length; wi++) {
+				a += Long.bitCount(set[wi]);
+			}
+			return a + b + c + d;
+		}
+
+		@Override
+		int count(final LongBuffer set, final int offset, final int words) {
+			final int end = words & ~3;
+			int a = 0;
+			int b = 0;
+			int c = 0;
+			int d = 0;
+			int wi = 0;
+			for (; wi < end; wi += 4) {
+				final int at = offset + wi;
+				a += Long.bitCount(set.get(at));
+				b += Long.bitCount(set.get(at + 1));
+				c += Long.bitCount(set.get(at + 2));
+				d += Long.bitCount(set.get(at + 3));
+			}
+			for (; wi < words; wi++) {
+				a += Long.bitCount(set.get(offset + wi));
+			}
+			return a + b + c + d;
+		}
+
+		@Override
+		int gain(final long[] covered, final long[] row, final int[] weights) {
+			if (weights != null) {
+				return scalar.gain(covered, row, weights);
+			}
+			final int end = covered.length & ~3;
+			int a = 0;
+			int b = 0;
+			int c = 0;
+			int d = 0;
+			int wi = 0;
+			for (; wi < end; wi += 4) {
+				a += Long.bitCount(row[wi] & ~covered[wi]);
+				b += Long.bitCount(row[wi + 1] & ~covered[wi + 1]);
+				c += Long.bitCount(row[wi + 2] & ~covered[wi + 2]);
+				d += Long.bitCount(row[wi + 3] & ~covered[wi + 3]);
+			}
+			for (; wi < covered.length; wi++) {
+				a += Long.bitCount(row[wi] & ~covered[wi]);
+			}
+			return a + b + c + d;
+		}
+
+		@Override
+		int gain(final long[] covered, final LongBuffer row, final int offset,
+				final int[] weights) {
+			if (weights != null) {
+				return scalar.gain(covered, row, offset, weights);
+			}
+			final int end = covered.length & ~3;
+			int a = 0;
+			int b = 0;
+			int c = 0;
+			int d = 0;
+			int wi = 0;
+			for (; wi < end; wi += 4) {
+				final int at = offset + wi;
+				a += Long.bitCount(row.get(at) & ~covered[wi]);
+				b += Long.bitCount(row.get(at + 1) & ~covered[wi + 1]);
+				c += Long.bitCount(row.get(at + 2) & ~covered[wi + 2]);
+				d += Long.bitCount(row.get(at + 3) & ~covered[wi + 3]);
+			}
+			for (; wi < covered.length; wi++) {
+				a += Long.bitCount(row.get(offset + wi) & ~covered[wi]);
+			}
+			return a + b + c + d;
+		}
+
+		@Override
+		String getName() {
+			return "unrolled";
+		}
+
+		@Override
+		int orGain(final long[] target, final long[] row, final int[] weights) {
+			if (weights != null) {
+				return scalar.orGain(target, row, weights);
+			}
+			final int end = target.length & ~3;
+			int a = 0;
+			int b = 0;
+			int c = 0;
+			int d = 0;
+			int wi = 0;
+			for (; wi < end; wi += 4) {
+				final long t0 = target[wi];
+				final long t1 = target[wi + 1];
+				final long t2 = target[wi + 2];
+				final long t3 = target[wi + 3];
+				a += Long.bitCount(row[wi] & ~t0);
+				b += Long.bitCount(row[wi + 1] & ~t1);
+				c += Long.bitCount(row[wi + 2] & ~t2);
+				d += Long.bitCount(row[wi + 3] & ~t3);
+				target[wi] = t0 | row[wi];
+				target[wi + 1] = t1 | row[wi + 1];
+				target[wi + 2] = t2 | row[wi + 2];
+				target[wi + 3] = t3 | row[wi + 3];
+			}
+			for (; wi < target.length; wi++) {
+				a += Long.bitCount(row[wi] & ~target[wi]);
+				target[wi] |= row[wi];
+			}
+			return a + b + c + d;
+		}
+
+		@Override
+		int orGain(final long[] target, final LongBuffer row,
+				final int offset, final int[] weights) {
+			if (weights != null) {
+				return scalar.orGain(target, row, offset, weights);
+			}
+			final int end = target.length & ~3;
+			int a = 0;
+			int b = 0;
+			int c = 0;
+			int d = 0;
+			int wi = 0;
+			for (; wi < end; wi += 4) {
+				final int at = offset + wi;
+				final long r0 = row.get(at);
+				final long r1 = row.get(at + 1);
+				final long r2 = row.get(at + 2);
+				final long r3 = row.get(at + 3);
+				final long t0 = target[wi];
+				final long t1 = target[wi + 1];
+				final long t2 = target[wi + 2];
+				final long t3 = target[wi + 3];
+				a += Long.bitCount(r0 & ~t0);
+				b += Long.bitCount(r1 & ~t1);
+				c += Long.bitCount(r2 & ~t2);
+				d += Long.bitCount(r3 & ~t3);
+				target[wi] = t0 | r0;
+				target[wi + 1] = t1 | r1;
+				target[wi + 2] = t2 | r2;
+				target[wi + 3] = t3 | r3;
+			}
+			for (; wi < target.length; wi++) {
+				final long word = row.get(offset + wi);
+				a += Long.bitCount(word & ~target[wi]);
+				target[wi] |= word;
+			}
+			return a + b + c + d;
+		}
+	}
+
+	/**
+	 * the kernel used by Bits
+	 */
+	static final Kernel ACTIVE = select(System.getProperty(
+			"kinaseblender.kernel", "unrolled"));
+
+	/**
+	 * the named kernel; unknown names select the scalar kernel
+	 */
+	static Kernel select(final String name) {
+		if ("unrolled".equals(name)) {
+			return new Unrolled();
+		}
+		return new Scalar();
+	}
+
+	/**
+	 * number of set bits
+	 */
+	abstract int count(long[] set);
+
+	/**
+	 * number of set bits in the given words of a buffer
+	 */
+	abstract int count(LongBuffer set, int offset, int words);
+
+	/**
+	 * weight of the bits of row not yet set in covered
+	 * @param weights weight per bit; null if every bit counts 1
+	 */
+	abstract int gain(long[] covered, long[] row, int[] weights);
+
+	/**
+	 * weight of the bits of the row starting at offset not yet set in
+	 * covered
+	 * @param weights weight per bit; null if every bit counts 1
+	 */
+	abstract int gain(long[] covered, LongBuffer row, int offset,
+			int[] weights);
+
+	abstract String getName();
+
+	/**
+	 * target |= row
+	 * @param weights weight per bit; null if every bit counts 1
+	 * @return weight of the bits newly set in target
+	 */
+	abstract int orGain(long[] target, long[] row, int[] weights);
+
+	/**
+	 * target |= the row starting at offset
+	 * @param weights weight per bit; null if every bit counts 1
+	 * @return weight of the bits newly set in target
+	 */
+	abstract int orGain(long[] target, LongBuffer row, int offset,
+			int[] weights);
+
+	@Override
+	public String toString() {
+		return getName();
+	}
+}
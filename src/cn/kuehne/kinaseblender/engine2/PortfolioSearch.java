@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 2015 Thomas Kuehne <thomas@kuehne.cn>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package cn.kuehne.kinaseblender.engine2;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import cn.kuehne.kinaseblender.engine2.CompiledCloud.SearchState;
+
+/**
+ * portfolio of beam searches over the same cloud, each on its own thread:
+ * start 0 breaks ties between equally scored candidates in generation order,
+ * the other starts at random. Every depth is searched by all starts and
+ * their results are merged; a start that runs out of time or combinations
+ * drops out.
+ */
+public class PortfolioSearch implements Search {
+	/**
+	 * a single beam search of the portfolio
+	 */
+	private static final class Start implements Callable<Start> {
+		boolean found;
+		final int number;
+		final SearchState state;
+
+		Start(final int number, final SearchState state) {
+			this.number = number;
+			this.state = state;
+		}
+
+		public Start call() {
+			found = state.search();
+			return this;
+		}
+	}
+
+	/**
+	 * combinations from highest to lowest product count
+	 */
+	private static final Comparator<Combination> DESCENDING = new Comparator<Combination>() {
+		public int compare(final Combination one, final Combination other) {
+			return other.getProductCount() - one.getProductCount();
+		}
+	};
+
+	private Combination[] best;
+	private final int capacity;
+	private Combination[] close;
+	private int deepth;
+
+	/**
+	 * finders[i]: numbers of the starts that found best[i]
+	 */
+	private int[][] finders;
+
+	private final int startCount;
+
+	/**
+	 * starts still searching
+	 */
+	private final List<Start> starts;
+
+	/**
+	 * @param starts number of beam searches run at the same time
+	 * @param seed seed of the random tie breaking of starts 1 and up
+	 */
+	public PortfolioSearch(final CompiledCloud cloud, final int starts,
+			final long seed) {
+		if (cloud == null) {
+			throw new IllegalArgumentException("no cloud");
+		}
+		if (starts < 1) {
+			throw new IllegalArgumentException("bad start count: " + starts);
+		}
+		startCount = starts;
+		capacity = cloud.calculateBufferCapacity();
+		best = new Combination[0];
+		close = new Combination[0];
+		finders = new int[0][];
+
+		this.starts = new ArrayList<Start>(starts);
+		final Random random = new Random(seed);
+		for (int number = 0; number < starts; number++) {
+			final SearchState state = cloud.initSearch();
+			state.setGreedySeed(true);
+			if (0 < number) {
+				state.setRandomSeed(random.nextLong());
+			}
+			this.starts.add(new Start(number, state));
+		}
+	}
+
+	public Combination[] closeCombinations() {
+		return close.clone();
+	}
+
+	public Combination[] combinations() {
+		return best.clone();
+	}
+
+	public int getBestSize() {
+		return best.length;
+	}
+
+	public int getCandidateSize() {
+		return close.length;
+	}
+
+	public int getDeepth() {
+		return deepth;
+	}
+
+	/**
+	 * numbers of the starts that found combinations()[index]
+	 */
+	public int[] getFinders(final int index) {
+		if (index < 0 || finders.length <= index) {
+			throw new IllegalArgumentException("bad index: " + index);
+		}
+		return finders[index].clone();
+	}
+
+	/**
+	 * number of starts still searching
+	 */
+	public int getRunningCount() {
+		return starts.size();
+	}
+
+	/**
+	 * number of starts, including the ones that dropped out
+	 */
+	public int getStartCount() {
+		return startCount;
+	}
+
+	public boolean search() {
+		if (starts.isEmpty()) {
+			return false;
+		}
+
+		final ExecutorService executor = Executors.newFixedThreadPool(starts
+				.size());
+		final List<Start> finished = new ArrayList<Start>();
+		try {
+			final List<Future<Start>> futures = new ArrayList<Future<Start>>();
+			for (final Start start : starts) {
+				futures.add(executor.submit(start));
+			}
+			for (final Future<Start> future : futures) {
+				final Start start = future.get();
+				if (start.found) {
+					finished.add(start);
+				}
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		} catch (final ExecutionException e) {
+			throw new IllegalStateException("search failed", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+
+		starts.retainAll(finished);
+		if (finished.isEmpty()) {
+			return false;
+		}
+		deepth++;
+
+		// best combinations of all starts reaching the highest score
+		int score = Integer.MIN_VALUE;
+		final Map<List<Source>, Combination> optimum = new LinkedHashMap<List<Source>, Combination>();
+		final Map<List<Source>, List<Integer>> found = new LinkedHashMap<List<Source>, List<Integer>>();
+		for (final Start start : finished) {
+			final Combination[] combinations = start.state.combinations();
+			final int startScore = combinations[0].getProductCount();
+			if (score < startScore) {
+				score = startScore;
+				optimum.clear();
+				found.clear();
+			}
+			if (score == startScore) {
+				for (final Combination combination : combinations) {
+					final List<Source> key = Arrays.asList(combination
+							.getSources());
+					if (!optimum.containsKey(key)) {
+						optimum.put(key, combination);
+						found.put(key, new ArrayList<Integer>());
+					}
+					found.get(key).add(start.number);
+				}
+			}
+		}
+		best = optimum.values().toArray(new Combination[optimum.size()]);
+		finders = new int[best.length][];
+		int index = 0;
+		for (final List<Integer> numbers : found.values()) {
+			final int[] back = new int[numbers.size()];
+			for (int i = 0; i < back.length; i++) {
+				back[i] = numbers.get(i);
+			}
+			finders[index++] = back;
+		}
+
+		// near-optimum combinations of all starts without duplicates
+		final Map<List<Source>, Combination> near = new LinkedHashMap<List<Source>, Combination>();
+		for (final Start start : finished) {
+			for (final Combination combination : start.state
+					.closeCombinations()) {
+				final List<Source> key = Arrays.asList(combination
+						.getSources());
+				if (!near.containsKey(key)) {
+					near.put(key, combination);
+				}
+			}
+		}
+		final List<Combination> sorted = new ArrayList<Combination>(near
+				.values());
+		Collections.sort(sorted, DESCENDING);
+		close = sorted.subList(0, Math.min(capacity, sorted.size())).toArray(
+				new Combination[0]);
+
+		return true;
+	}
+
+	/**
+	 * stop searching the given number of milliseconds after this call;
+	 * starts not finishing a depth by then drop out
+	 */
+	public void setDeadline(final long timeoutMillis) {
+		if (timeoutMillis < 0) {
+			throw new IllegalArgumentException("bad timeout: " + timeoutMillis);
+		}
+		for (final Start start : starts) {
+			start.state.setDeadline(timeoutMillis);
+		}
+	}
+
+	/**
+	 * largest number of sources to search
+	 */
+	public void setMaxDeepth(final int sources) {
+		for (final Start start : starts) {
+			start.state.setMaxDeepth(sources);
+		}
+	}
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2015 Thomas Kuehne <thomas@kuehne.cn>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package cn.kuehne.kinaseblender.engine2;
+
+/**
+ * results of a single finished search depth
+ */
+public final class SearchEvent {
+	private final Combination[] best;
+	private final Combination[] close;
+	private final int deepth;
+	private final long nanos;
+
+	SearchEvent(final int deepth, final Combination[] best,
+			final Combination[] close, final long nanos) {
+		this.deepth = deepth;
+		this.best = best;
+		this.close = close;
+		this.nanos = nanos;
+	}
+
+	/**
+	 * optimum combinations
+	 */
+	public Combination[] getBest() {
+		return best.clone();
+	}
+
+	/**
+	 * optimum and near-optimum combinations
+	 */
+	public Combination[] getClose() {
+		return close.clone();
+	}
+
+	/**
+	 * number of sources
+	 */
+	public int getDeepth() {
+		return deepth;
+	}
+
+	/**
+	 * time spent searching this depth in nanoseconds
+	 */
+	public long getNanos() {
+		return nanos;
+	}
+}
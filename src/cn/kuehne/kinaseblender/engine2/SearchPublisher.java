@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2015 Thomas Kuehne <thomas@kuehne.cn>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package cn.kuehne.kinaseblender.engine2;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * runs a Search and hands each finished depth to the subscribed listeners.
+ * Listeners are called synchronously, so a slow listener holds back the
+ * next depth instead of letting results pile up.
+ */
+public class SearchPublisher {
+	private final List<SearchListener> listeners;
+	private final Search search;
+
+	public SearchPublisher(final Search search) {
+		if (search == null) {
+			throw new IllegalArgumentException("no search");
+		}
+		this.search = search;
+		listeners = new CopyOnWriteArrayList<SearchListener>();
+	}
+
+	/**
+	 * search all depths and publish them
+	 * @return number of published depths
+	 */
+	public int publish() {
+		int published = 0;
+		long start = System.nanoTime();
+		while (search.search()) {
+			final Combination[] best = search.combinations();
+			final Combination[] close = search.closeCombinations();
+			final SearchEvent event = new SearchEvent(search.getDeepth(),
+					best, close, System.nanoTime() - start);
+			for (final SearchListener listener : listeners) {
+				listener.depthFinished(event);
+			}
+			published++;
+			start = System.nanoTime();
+		}
+		return published;
+	}
+
+	public void subscribe(final SearchListener listener) {
+		if (listener == null) {
+			throw new IllegalArgumentException("no listener");
+		}
+		listeners.add(listener);
+	}
+
+	public void unsubscribe(final SearchListener listener) {
+		listeners.remove(listener);
+	}
+}
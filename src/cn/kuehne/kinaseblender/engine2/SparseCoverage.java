@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2015 Thomas Kuehne <thomas@kuehne.cn>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package cn.kuehne.kinaseblender.engine2;
+
+import java.util.Arrays;
+
+/**
+ * Coverage storing the sorted product indices and the matching amounts per
+ * source; used for clouds where most sources produce few products
+ */
+final class SparseCoverage extends Coverage {
+	private final int[][] rows;
+	private final float[][] values;
+
+	/**
+	 * @param amounts amounts matching produces, null for a Coverage without
+	 *            amounts
+	 */
+	SparseCoverage(final int products, final int[][] produces,
+			final float[][] amounts) {
+		super(produces.length, products);
+		if (amounts != null && amounts.length != produces.length) {
+			throw new IllegalArgumentException("amounts don't match data");
+		}
+		for (int sourceIndex = 0; sourceIndex < produces.length; sourceIndex++) {
+			final int[] entry = produces[sourceIndex];
+			if (entry == null) {
+				throw new IllegalArgumentException("no data for source "
+						+ sourceIndex);
+			}
+			if (amounts != null
+					&& (amounts[sourceIndex] == null || amounts[sourceIndex].length != entry.length)) {
+				throw new IllegalArgumentException(
+						"amounts don't match data for source " + sourceIndex);
+			}
+			int last = -1;
+			for (final int productIndex : entry) {
+				if (productIndex <= last || products <= productIndex) {
+					throw new IllegalArgumentException("bad product index "
+							+ productIndex + " for source " + sourceIndex);
+				}
+				last = productIndex;
+			}
+		}
+		rows = produces;
+		values = amounts;
+	}
+
+	@Override
+	Coverage create(final int products, final int[][] produces) {
+		return new SparseCoverage(products, produces, null);
+	}
+
+	@Override
+	int degree(final int sourceIndex) {
+		return rows[sourceIndex].length;
+	}
+
+	@Override
+	float getValue(final int sourceIndex, final int productIndex) {
+		if (values == null) {
+			return 0.0f;
+		}
+		final int index = Arrays.binarySearch(rows[sourceIndex], productIndex);
+		return (index < 0) ? 0.0f : values[sourceIndex][index];
+	}
+
+	@Override
+	long memory() {
+		long bytes = 0;
+		for (int si = 0; si < rows.length; si++) {
+			bytes += 4L * rows[si].length;
+			if (values != null) {
+				bytes += 4L * values[si].length;
+			}
+		}
+		return bytes;
+	}
+
+	@Override
+	int gain(final int sourceIndex, final long[] covered,
+			final int[] weights) {
+		int gain = 0;
+		for (final int productIndex : rows[sourceIndex]) {
+			if (!Bits.get(covered, productIndex)) {
+				gain += (weights == null) ? 1 : weights[productIndex];
+			}
+		}
+		return gain;
+	}
+
+	@Override
+	int orGain(final int sourceIndex, final long[] target,
+			final int[] weights) {
+		int gain = 0;
+		for (final int productIndex : rows[sourceIndex]) {
+			gain += Bits.setGain(target, productIndex, weights);
+		}
+		return gain;
+	}
+
+	@Override
+	void orTwice(final int sourceIndex, final long[] once, final long[] twice) {
+		for (final int productIndex : rows[sourceIndex]) {
+			final int wi = productIndex >>> 6;
+			final long mask = 1L << productIndex;
+			twice[wi] |= once[wi] & mask;
+			once[wi] |= mask;
+		}
+	}
+
+	@Override
+	boolean produces(final int sourceIndex, final int productIndex) {
+		return -1 < Arrays.binarySearch(rows[sourceIndex], productIndex);
+	}
+
+	@Override
+	int[] products(final int sourceIndex) {
+		return rows[sourceIndex];
+	}
+
+	@Override
+	boolean subset(final int one, final int other) {
+		final int[] oneRow = rows[one];
+		final int[] otherRow = rows[other];
+		if (otherRow.length < oneRow.length) {
+			return false;
+		}
+		int otherIndex = 0;
+		for (final int productIndex : oneRow) {
+			while (otherIndex < otherRow.length
+					&& otherRow[otherIndex] < productIndex) {
+				otherIndex++;
+			}
+			if (otherIndex == otherRow.length
+					|| otherRow[otherIndex] != productIndex) {
+				return false;
+			}
+			otherIndex++;
+		}
+		return true;
+	}
+}
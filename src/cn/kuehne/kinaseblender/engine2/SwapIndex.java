@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2015 Thomas Kuehne <thomas@kuehne.cn>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+ * CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+ * TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package cn.kuehne.kinaseblender.engine2;
+
+/**
+ * finds templates that differ from a template by a single source: every
+ * template is stored once per contained source under the fingerprint of the
+ * template without that source
+ */
+final class SwapIndex {
+	/**
+	 * source left out by each entry
+	 */
+	private final int[] dropped;
+
+	/**
+	 * subset fingerprint to its first entry
+	 */
+	private final FingerprintIndex first;
+
+	/**
+	 * next entry with the same subset fingerprint, -1 after the last
+	 */
+	private final int[] next;
+
+	/**
+	 * start[index]: first entry of the given template, start[length]: number
+	 * of entries
+	 */
+	private final int[] start;
+
+	/**
+	 * fingerprint of the template of each entry without the dropped source
+	 */
+	private final long[] subsets;
+
+	/**
+	 * template of each entry
+	 */
+	private final int[] template;
+
+	/**
+	 * @param templates the combinations of a depth, all of the same size
+	 * @param sourceKeys Zobrist key of each source
+	 */
+	SwapIndex(final Scored[] templates, final long[] sourceKeys) {
+		start = new int[templates.length + 1];
+		for (int index = 0; index < templates.length; index++) {
+			start[index + 1] = start[index]
+					+ ((CompiledCloud.SearchComb) templates[index]).ids.length;
+		}
+		final int entries = start[templates.length];
+		dropped = new int[entries];
+		next = new int[entries];
+		subsets = new long[entries];
+		template = new int[entries];
+		first = new FingerprintIndex(entries);
+		int entry = 0;
+		for (int index = 0; index < templates.length; index++) {
+			final CompiledCloud.SearchComb comb =
+					(CompiledCloud.SearchComb) templates[index];
+			for (final int si : comb.ids) {
+				dropped[entry] = si;
+				subsets[entry] = comb.fingerprint ^ sourceKeys[si];
+				template[entry] = index;
+				final int head = first.get(subsets[entry]);
+				if (head < 0) {
+					first.put(subsets[entry], entry);
+					next[entry] = -1;
+				} else {
+					next[entry] = next[head];
+					next[head] = entry;
+				}
+				entry++;
+			}
+		}
+	}
+
+	/**
+	 * earliest generation of the children of a template that other
+	 * templates generate as well: earliest[si] is lowered to other times
+	 * sourceCount plus y for every template other that is the given one
+	 * without source y plus source si
+	 */
+	void collect(final int index, final long[] earliest,
+			final int sourceCount) {
+		for (int own = start[index]; own < start[index + 1]; own++) {
+			for (int entry = first.get(subsets[own]); -1 < entry;
+					entry = next[entry]) {
+				if (template[entry] != index) {
+					earliest[dropped[entry]] = Math.min(
+							earliest[dropped[entry]], (long) template[entry]
+									* sourceCount + dropped[own]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * undo collect
+	 */
+	void reset(final int index, final long[] earliest) {
+		for (int own = start[index]; own < start[index + 1]; own++) {
+			for (int entry = first.get(subsets[own]); -1 < entry;
+					entry = next[entry]) {
+				earliest[dropped[entry]] = Long.MAX_VALUE;
+			}
+		}
+	}
+}
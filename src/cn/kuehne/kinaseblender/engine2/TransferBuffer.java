@@ -22,78 +22,261 @@
  */
 package cn.kuehne.kinaseblender.engine2;
 
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
- * Buffer used by SearchState
+ * Buffer used by SearchState: bounded min-heap ordered by score, then by the
+ * given order of ties and then by the natural order, so that the content
+ * doesn't depend on the order of additions. Elements need a cheap hashCode
+ * that is consistent with their natural order.
  */
-class TransferBuffer<T extends Scored> {
+class TransferBuffer<T extends Scored & Comparable<T>> {
+
+	/**
+	 * heap order: score, then ties, then natural order
+	 */
+	private final Comparator<T> order = new Comparator<T>() {
+		public int compare(final T one, final T other) {
+			final int oneScore = one.getScore();
+			final int otherScore = other.getScore();
+			if (oneScore != otherScore) {
+				return (oneScore < otherScore) ? -1 : 1;
+			}
+			if (ties != null) {
+				final int tie = ties.compare(one, other);
+				if (tie != 0) {
+					return tie;
+				}
+			}
+			return one.compareTo(other);
+		}
+	};
+
+	/**
+	 * heap[0] is the least element
+	 */
+	private final T[] heap;
+
+	/**
+	 * duplicate detection
+	 */
+	private final Set<T> index;
+
+	/**
+	 * statistics: elements added, elements removed to make room and
+	 * elements reaching the minimal score
+	 */
+	private int accepted;
+
+	/**
+	 * number of elements reaching the accept score when offered, by score:
+	 * counts[score - minScore]
+	 */
+	private int[] counts;
+
+	private int evicted;
+	private int offered;
 
-	private final LinkedList<T> data;
-	private final int maxSize;
 	private int minScore;
+	private int size;
+
+	/**
+	 * order of elements with the same score, null for the natural order
+	 */
+	private final Comparator<? super T> ties;
 
 	TransferBuffer(final int maxElements) {
-		data = new LinkedList<T>();
-		maxSize = maxElements;
+		this(maxElements, null);
+	}
+
+	/**
+	 * @param ties order of elements with the same score, null for the
+	 *            natural order
+	 */
+	@SuppressWarnings("unchecked")
+	TransferBuffer(final int maxElements, final Comparator<? super T> ties) {
+		this.ties = ties;
+		if (maxElements < 1) {
+			throw new IllegalArgumentException("bad capacity: " + maxElements);
+		}
+		heap = (T[]) new Scored[maxElements];
+		index = new HashSet<T>(maxElements * 2);
+		counts = new int[16];
+	}
+
+	/**
+	 * check if an element with the given score could be added; counted like
+	 * add, so a positive answer has to be followed by insert
+	 */
+	boolean accepts(final int score) {
+		if (score < minScore) {
+			return false;
+		}
+		offered++;
+		if (score < getAcceptScore()) {
+			return false;
+		}
+		count(score);
+		return true;
 	}
 
 	/**
 	 * add a new element if it has a good score and isn't yet contained herein 
 	 */
 	boolean add(final T comb) {
-		int score = comb.getScore();
-		if (score < minScore) {
+		if (comb.getScore() < minScore) {
 			return false;
 		}
+		offered++;
+		if (getAcceptScore() <= comb.getScore()) {
+			count(comb.getScore());
+		}
+		return insert(comb);
+	}
 
-		int added = -1;
-		for (int index = 0; index < data.size(); index++) {
-			final T old = data.get(index);
+	/**
+	 * count an element reaching the accept score
+	 */
+	private void count(final int score) {
+		final int slot = score - minScore;
+		if (counts.length <= slot) {
+			counts = Arrays.copyOf(counts, Math.max(slot + 1,
+					2 * counts.length));
+		}
+		counts[slot]++;
+	}
 
-			if (comb.equals(old)) {
-				return false;
-			}
+	/**
+	 * add a new element if it isn't yet contained herein and there is room;
+	 * doesn't check the minimal score
+	 */
+	boolean insert(final T comb) {
+		if (index.contains(comb)) {
+			return false;
+		}
 
-			final int oldScore = old.getScore();
+		if (size < heap.length) {
+			siftUp(size++, comb);
+		} else if (order.compare(heap[0], comb) < 0) {
+			index.remove(heap[0]);
+			siftDown(0, comb);
+			evicted++;
+		} else {
+			return false;
+		}
+		index.add(comb);
+		accepted++;
 
-			if (score < oldScore) {
-				if (score < oldScore && maxSize < data.size()) {
-					throw new IllegalStateException("old.score == score "
-							+ score + " " + data.size());
+		return true;
+	}
 
-				}
-				if (data.size() < maxSize || index != 0) {
-					data.add(index, comb);
-					added = index;
-					break;
-				} else {
-					return false;
-				}
-			}
-		}
+	/**
+	 * allocate array and fill with current elements in ascending order
+	 */
+	Scored[] copy() {
+		final T[] back = Arrays.copyOf(heap, size);
+		Arrays.sort(back, order);
+		return back;
+	}
 
-		if (added < 0) {
-			data.add(comb);
+	/**
+	 * minimal score a new element needs to be accepted; elements with a lower
+	 * score can be dropped without calling add
+	 */
+	int getAcceptScore() {
+		if (size < heap.length) {
+			return minScore;
 		}
-		if (maxSize < data.size()) {
-			/*T old = data.get(0);
-			if (data.getLast().getScore() == old.getScore()) {
-				throw new IllegalStateException("last.score == first.score "
-						+ score + " " + data.size() + " "
-						+ added);
-			} */
-			data.remove(0);
+		return Math.max(minScore, heap[0].getScore());
+	}
+
+	/**
+	 * number of elements added since the last setMinScore
+	 */
+	int getAccepted() {
+		return accepted;
+	}
+
+	/**
+	 * maximum number of elements
+	 */
+	int getCapacity() {
+		return heap.length;
+	}
+
+	/**
+	 * number of offered elements scoring at least the current accept score,
+	 * including rejected and evicted ones; unlike the other statistics it
+	 * doesn't depend on how the elements were spread over merged buffers
+	 */
+	int getContenders() {
+		int sum = 0;
+		final int first = getAcceptScore() - minScore;
+		for (int slot = first; slot < counts.length; slot++) {
+			sum += counts[slot];
 		}
+		return sum;
+	}
 
-		return true;
+	/**
+	 * number of elements reaching the accept score when offered, by score
+	 * above the minimal score
+	 */
+	int[] getCounts() {
+		return counts.clone();
 	}
 
 	/**
-	 * allocate array and fill with current elements
+	 * number of elements removed to make room since the last setMinScore
 	 */
-	Scored[] copy() {
-		return data.toArray(new Scored[data.size()]);
+	int getEvicted() {
+		return evicted;
+	}
+
+	/**
+	 * number of elements reaching the minimal score since the last
+	 * setMinScore, including rejected ones
+	 */
+	int getOffered() {
+		return offered;
+	}
+
+	/**
+	 * add the elements of another buffer with the same minimal score and
+	 * its statistics
+	 */
+	void merge(final TransferBuffer<T> other) {
+		merge(Arrays.copyOf(other.heap, other.size), other.offered,
+				other.accepted, other.evicted, other.counts);
+	}
+
+	/**
+	 * add the elements retained by another buffer with the same minimal
+	 * score and its statistics; the elements were already counted by the
+	 * other buffer
+	 */
+	void merge(final T[] elements, final int otherOffered,
+			final int otherAccepted, final int otherEvicted,
+			final int[] otherCounts) {
+		final int ownAccepted = accepted;
+		final int ownEvicted = evicted;
+		for (final T comb : elements) {
+			if (minScore <= comb.getScore()) {
+				insert(comb);
+			}
+		}
+		offered += otherOffered;
+		accepted = ownAccepted + otherAccepted;
+		evicted = ownEvicted + otherEvicted;
+		if (counts.length < otherCounts.length) {
+			counts = Arrays.copyOf(counts, otherCounts.length);
+		}
+		for (int slot = 0; slot < otherCounts.length; slot++) {
+			counts[slot] += otherCounts[slot];
+		}
 	}
 
 	/**
@@ -102,13 +285,56 @@ class TransferBuffer<T extends Scored> {
 	void setMinScore(final int newMinScore) {
 		minScore = newMinScore;
 
-		data.clear();
+		Arrays.fill(heap, 0, size, null);
+		size = 0;
+		index.clear();
+		accepted = 0;
+		Arrays.fill(counts, 0);
+		evicted = 0;
+		offered = 0;
+	}
+
+	/**
+	 * place comb at or below the given position
+	 */
+	private void siftDown(final int start, final T comb) {
+		int pos = start;
+		final int half = size >>> 1;
+		while (pos < half) {
+			int child = 2 * pos + 1;
+			final int right = child + 1;
+			if (right < size && order.compare(heap[right], heap[child]) < 0) {
+				child = right;
+			}
+			if (order.compare(comb, heap[child]) <= 0) {
+				break;
+			}
+			heap[pos] = heap[child];
+			pos = child;
+		}
+		heap[pos] = comb;
+	}
+
+	/**
+	 * place comb at or above the given position
+	 */
+	private void siftUp(final int start, final T comb) {
+		int pos = start;
+		while (0 < pos) {
+			final int parent = (pos - 1) >>> 1;
+			if (order.compare(heap[parent], comb) <= 0) {
+				break;
+			}
+			heap[pos] = heap[parent];
+			pos = parent;
+		}
+		heap[pos] = comb;
 	}
 
 	/**
 	 * current number of elements
 	 */
 	int size() {
-		return data.size();
+		return size;
 	}
 }
@@ -32,18 +32,43 @@ import java.util.Map;
 
 import javax.swing.JComponent;
 import javax.swing.JTable;
+import javax.swing.table.DefaultTableModel;
 
 import cn.kuehne.kinaseblender.AppInterface;
 import cn.kuehne.kinaseblender.engine2.Combination;
 import cn.kuehne.kinaseblender.engine2.CompiledCloud;
 import cn.kuehne.kinaseblender.engine2.CompiledCloud.SearchState;
+import cn.kuehne.kinaseblender.engine2.ComponentSearch;
+import cn.kuehne.kinaseblender.engine2.GreedySearch;
 import cn.kuehne.kinaseblender.engine2.Product;
+import cn.kuehne.kinaseblender.engine2.Search;
+import cn.kuehne.kinaseblender.engine2.SearchEvent;
+import cn.kuehne.kinaseblender.engine2.SearchListener;
+import cn.kuehne.kinaseblender.engine2.SearchPublisher;
 import cn.kuehne.kinaseblender.engine2.Source;
 
 /**
  * coordinates all table related GUI operations
  */
 public class GuiCloud {
+	/**
+	 * release a replaced cloud once no table model can reach it; queued
+	 * on the event dispatch thread after the removal of its models
+	 */
+	class CloudCloser implements Runnable {
+		final CompiledCloud old;
+
+		CloudCloser(final CompiledCloud old) {
+			this.old = old;
+		}
+
+		public void run() {
+			table.setModel(new DefaultTableModel());
+			appInterface.enableExport(false);
+			old.close();
+		}
+	}
+
 	class CombinationToModel implements Runnable {
 		final Combination combi;
 
@@ -63,6 +88,33 @@ public class GuiCloud {
 
 	}
 
+	/**
+	 * show the results of each search depth as soon as they are available
+	 */
+	class DepthListener implements SearchListener {
+		final RequiredSourcesModel required;
+
+		DepthListener(final RequiredSourcesModel required) {
+			this.required = required;
+		}
+
+		public void depthFinished(final SearchEvent event) {
+			final Combination[] combs = event.getBest();
+			bestCombinations.add(combs);
+			appInterface.invokeInEventDispatchThread(new RequiredSourcesAdder(
+					required, combs));
+
+			final Combination[] closeCombinations = event.getClose();
+			appInterface.addItem(new NextBestModel(closeCombinations));
+
+			final String message = "find Combinations... " + "(Sources: "
+					+ event.getDeepth() + ",  Best: " + combs.length
+					+ ", NextBest: " + closeCombinations.length + ", "
+					+ (event.getNanos() / 1000000) + " ms)";
+			appInterface.progressSwitch(message);
+		}
+	}
+
 	class ModelChangedRunneable implements Runnable {
 		final ExportableTableModel model;
 		final SelListener selListener;
@@ -86,6 +138,21 @@ public class GuiCloud {
 
 	}
 
+	class RequiredSourcesAdder implements Runnable {
+		final Combination[] combs;
+		final RequiredSourcesModel model;
+
+		RequiredSourcesAdder(final RequiredSourcesModel model,
+				final Combination[] combs) {
+			this.model = model;
+			this.combs = combs;
+		}
+
+		public void run() {
+			model.add(combs);
+		}
+	}
+
 	class SelListener implements CellClickListener, ItemListener {
 		class TableActionChanged implements Runnable {
 			final TableAction action;
@@ -171,7 +238,8 @@ public class GuiCloud {
 	// final JButton exportButton;
 	final Map<Object, ExportableTableModel> models;
 
-	private final List<Combination[]> nextBestCombinaitons;
+	/** number of threads used by the search */
+	private int searchThreads;
 
 	final JTable table;
 
@@ -185,29 +253,47 @@ public class GuiCloud {
 
 		models = new HashMap<Object, ExportableTableModel>();
 		bestCombinations = new ArrayList<Combination[]>();
-		nextBestCombinaitons = new ArrayList<Combination[]>();
+		searchThreads = Runtime.getRuntime().availableProcessors();
 	}
 
-	private void calcCombinations(final CompiledCloud compiled) {
-		final SearchState searchState = compiled.initSearch();
-		bestCombinations.clear();
-		nextBestCombinaitons.clear();
-
-		while (searchState.search()) {
-			final Combination[] combs = searchState.combinations();
-			bestCombinations.add(combs);
-
-			final Combination[] closeCombinations = searchState
-					.closeCombinations();
-			nextBestCombinaitons.add(closeCombinations);
+	private void calcCombinations(final CompiledCloud compiled,
+			final RequiredSourcesModel required) {
+		final ComponentSearch components = new ComponentSearch(compiled,
+				searchThreads);
+		final Search searchState;
+		if (1 < components.getComponentCount()) {
+			components.setGreedySeed(true);
+			components.setFullCoverageTarget(true);
+			searchState = components;
+		} else {
+			final SearchState single = compiled.initSearch();
+			single.setThreads(searchThreads);
+			single.setGreedySeed(true);
+			single.setTarget(compiled.getProducedCount());
+			searchState = single;
+		}
+		final SearchPublisher publisher = new SearchPublisher(searchState);
+		publisher.subscribe(new DepthListener(required));
+		publisher.publish();
+	}
 
-			final String message = "find Combinations... " + "(Sources: "
-					+ searchState.getDeepth() + ",  Best: "
-					+ searchState.getBestSize() + ", NextBest: "
-					+ searchState.getCandidateSize() + ")";
+	/**
+	 * lazy greedy combinations: fast first results
+	 */
+	private List<Combination[]> calcGreedyCombinations(
+			final CompiledCloud compiled) {
+		final List<Combination[]> back = new ArrayList<Combination[]>();
+		final GreedySearch greedy = compiled.initGreedySearch();
+		while (!Thread.currentThread().isInterrupted() && greedy.search()) {
+			back.add(greedy.combinations());
+
+			final String message = "find greedy Combinations... "
+					+ "(Sources: " + greedy.getDeepth() + ", Products: "
+					+ greedy.getScore() + ", Optimum <= "
+					+ greedy.getUpperBound() + ")";
 			appInterface.progressSwitch(message);
-
 		}
+		return back;
 	}
 
 	public JComponent getCloudComponent() {
@@ -219,13 +305,19 @@ public class GuiCloud {
 	}
 
 	public void setCloud(final CompiledCloud compiled) {
+		final CompiledCloud old = cloud;
 		cloud = compiled;
 		appInterface.removeAllItems();
+		if (old != null && old != compiled) {
+			appInterface.invokeInEventDispatchThread(new CloudCloser(old));
+		}
 		models.clear();
 		combCounter = 1;
+		bestCombinations.clear();
 		if (cloud != null) {
-			appInterface.progressPush("find Combinations");
-			calcCombinations(compiled);
+			appInterface.progressPush("find greedy Combinations");
+			appInterface.addItem(new CombinationCollectionModel(
+					calcGreedyCombinations(compiled), " Greedy"));
 			appInterface.progressPop();
 
 			appInterface.progressPush("generate Data model");
@@ -241,18 +333,24 @@ public class GuiCloud {
 			appInterface.progressPop();
 
 			appInterface.progressPush("generate Required Sources model");
-			appInterface.addItem(new RequiredSourcesModel(bestCombinations));
+			final RequiredSourcesModel required = new RequiredSourcesModel(
+					bestCombinations);
+			appInterface.addItem(required);
 			appInterface.progressPop();
 
-			appInterface.progressPush("generate Combination model");
-			appInterface.addItem(new CombinationCollectionModel(
-					bestCombinations));
+			appInterface.progressPush("find Combinations (compiled data: "
+					+ (cloud.getMemoryUsage() >> 10) + " KiB)");
+			calcCombinations(compiled, required);
 			appInterface.progressPop();
 
-			appInterface.progressPush("generate Next Best models");
-			for (final Combination[] nextBest : nextBestCombinaitons) {
-				appInterface.addItem(new NextBestModel(nextBest));
+			if (Thread.currentThread().isInterrupted()) {
+				// cancelled: a new cloud is on its way
+				return;
 			}
+
+			appInterface.progressPush("generate Combination model");
+			appInterface.addItem(new CombinationCollectionModel(
+					bestCombinations));
 			appInterface.progressPop();
 
 			appInterface.progressPush("generate What If? model");
@@ -262,6 +360,18 @@ public class GuiCloud {
 		}
 	}
 
+	/**
+	 * number of threads of the following searches, by default the number
+	 * of processors; set by AppFrame from the system property
+	 * kinaseblender.threads
+	 */
+	public void setSearchThreads(final int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("bad thread count: " + threads);
+		}
+		searchThreads = threads;
+	}
+
 	public void setTitleAddon(final String addon) {
 		if (addon == null) {
 			appInterface.setTitle("Kinaseblender Big");
@@ -46,9 +46,7 @@ public class ProductModel extends AbstractBasicTableModel {
 
 		final List<List<Source>> sources = new ArrayList<List<Source>>();
 		for (int i = 0; i < products; i++) {
-			final Product product = compiled.getProduct(i);
-
-			final List<Source> producers = compiled.getSources(product);
+			final List<Source> producers = compiled.getSources(i);
 			sources.add(producers);
 			if (producers != null) {
 				final int size = producers.size();
@@ -79,10 +77,9 @@ public class ProductModel extends AbstractBasicTableModel {
 				final int max = producers.size();
 				data[3][pi + 1] = max;
 				for (int si = 0; si < max; si++) {
-					final Source source = producers.get(si);
-					data[si + 4][pi + 1] = source;
-					produce += compiled
-							.getValue(compiled.getSource(source), pi);
+					data[si + 4][pi + 1] = producers.get(si);
+					produce += compiled.getValue(compiled.getProducer(pi, si),
+							pi);
 				}
 				data[2][pi + 1] = produce;
 			}
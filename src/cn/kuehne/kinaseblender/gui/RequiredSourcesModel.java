@@ -23,6 +23,7 @@
 
 package cn.kuehne.kinaseblender.gui;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import cn.kuehne.kinaseblender.engine2.Combination;
@@ -32,12 +33,9 @@ import cn.kuehne.kinaseblender.engine2.Combination;
  */
 public class RequiredSourcesModel extends AbstractBasicTableModel {
 	private static final long serialVersionUID = 1L;
-	private final Object[][] data;
 
-	public RequiredSourcesModel(final List<Combination[]> combi) {
-		super(" Required Sources");
-
-		data = new Object[3][combi.size() + 1];
+	private static Object[][] toData(final List<Combination[]> combi) {
+		final Object[][] data = new Object[3][combi.size() + 1];
 
 		data[0][0] = "Sources";
 		data[1][0] = "Products";
@@ -54,6 +52,27 @@ public class RequiredSourcesModel extends AbstractBasicTableModel {
 				data[2][i + 1] = combs.length;
 			}
 		}
+		return data;
+	}
+
+	private final List<Combination[]> combinations;
+	private Object[][] data;
+
+	public RequiredSourcesModel(final List<Combination[]> combi) {
+		super(" Required Sources");
+
+		combinations = new ArrayList<Combination[]>(combi);
+		data = toData(combinations);
+	}
+
+	/**
+	 * append the best combinations of the next number of sources; has to be
+	 * called in the event dispatch thread
+	 */
+	public void add(final Combination[] combs) {
+		combinations.add(combs);
+		data = toData(combinations);
+		fireTableStructureChanged();
 	}
 
 	@Override
@@ -42,7 +42,7 @@ public class SingleProductModel extends AbstractBasicTableModel {
 		super("Product: " + product.getName());
 
 		final int productIndex = compiled.getProduct(product);
-		final List<Source> sources = compiled.getSources(product);
+		final List<Source> sources = compiled.getSources(productIndex);
 
 		data = new Object[3][sources.size() + 1];
 
@@ -54,8 +54,8 @@ public class SingleProductModel extends AbstractBasicTableModel {
 			final Source source = sources.get(si);
 			data[0][si + 1] = (si + 1);
 			data[1][si + 1] = source;
-			data[2][si + 1] = compiled.getValue(compiled.getSource(source),
-					productIndex);
+			data[2][si + 1] = compiled.getValue(
+					compiled.getProducer(productIndex, si), productIndex);
 		}
 	}
 